@@ -1,19 +1,44 @@
 package com.aws.spring.ebook.config;
 
+import com.aws.spring.ebook.config.AwsHttpProperties.ClientSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
 import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.net.URI;
+
 @Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(AwsHttpProperties.class)
 public class AwsClientConfig {
 
+    private final AwsHttpProperties httpProperties;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
     @Value("${aws.region}")
     private String awsRegion;
 
@@ -23,6 +48,10 @@ public class AwsClientConfig {
     @Value("${aws.secretAccessKey}")
     private String secretAccessKey;
 
+    // Optional, points the DynamoDB clients at a local stand-in such as DynamoDB Local
+    @Value("${aws.dynamodb.endpoint:}")
+    private String dynamoDbEndpoint;
+
     @Bean
     public S3Client s3Client() {
         return S3Client.builder()
@@ -30,17 +59,24 @@ public class AwsClientConfig {
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretAccessKey)
                 ))
+                .httpClientBuilder(apacheHttpClient(httpProperties.getS3()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getS3(), "s3"))
                 .build();
     }
 
     @Bean
     public DynamoDbClient dynamoDbClient() {
-        return DynamoDbClient.builder()
+        DynamoDbClientBuilder builder = DynamoDbClient.builder()
                 .region(Region.of(awsRegion))
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretAccessKey)
                 ))
-                .build();
+                .httpClientBuilder(apacheHttpClient(httpProperties.getDynamodb()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getDynamodb(), "dynamodb"));
+        if (!dynamoDbEndpoint.isBlank()) {
+            builder.endpointOverride(URI.create(dynamoDbEndpoint));
+        }
+        return builder.build();
     }
 
     @Bean
@@ -50,6 +86,8 @@ public class AwsClientConfig {
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretAccessKey)
                 ))
+                .httpClientBuilder(apacheHttpClient(httpProperties.getSqs()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getSqs(), "sqs"))
                 .build();
     }
 
@@ -60,6 +98,106 @@ public class AwsClientConfig {
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretAccessKey)
                 ))
+                .httpClientBuilder(apacheHttpClient(httpProperties.getSns()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getSns(), "sns"))
+                .build();
+    }
+
+    // Async clients run on Netty's event loop, so in-flight calls do not pin a thread each
+
+    @Bean
+    public S3AsyncClient s3AsyncClient() {
+        return S3AsyncClient.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretAccessKey)
+                ))
+                .httpClientBuilder(nettyHttpClient(httpProperties.getS3()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getS3(), "s3-async"))
+                .build();
+    }
+
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretAccessKey)
+                ))
+                .httpClientBuilder(nettyHttpClient(httpProperties.getDynamodb()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getDynamodb(), "dynamodb-async"));
+        if (!dynamoDbEndpoint.isBlank()) {
+            builder.endpointOverride(URI.create(dynamoDbEndpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public SqsAsyncClient sqsAsyncClient() {
+        return SqsAsyncClient.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretAccessKey)
+                ))
+                .httpClientBuilder(nettyHttpClient(httpProperties.getSqs()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getSqs(), "sqs-async"))
+                .build();
+    }
+
+    @Bean
+    public SnsAsyncClient snsAsyncClient() {
+        return SnsAsyncClient.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretAccessKey)
+                ))
+                .httpClientBuilder(nettyHttpClient(httpProperties.getSns()))
+                .overrideConfiguration(overrideConfiguration(httpProperties.getSns(), "sns-async"))
+                .build();
+    }
+
+    // Signing is a local computation, one presigner is shared by every presigned URL
+    @Bean
+    public S3Presigner s3Presigner() {
+        return S3Presigner.builder()
+                .region(Region.of(awsRegion))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretAccessKey)
+                ))
+                .build();
+    }
+
+    // HTTP clients are passed as builders so each SDK client owns, and closes, its own connection pool
+
+    private SdkHttpClient.Builder<?> apacheHttpClient(ClientSettings settings) {
+        return ApacheHttpClient.builder()
+                .maxConnections(settings.getMaxConnections())
+                .connectionAcquisitionTimeout(settings.getConnectionAcquisitionTimeout())
+                .connectionTimeout(settings.getConnectionTimeout())
+                .socketTimeout(settings.getSocketTimeout())
+                .connectionMaxIdleTime(settings.getConnectionMaxIdleTime())
+                .useIdleConnectionReaper(settings.isIdleConnectionReaper())
+                .tcpKeepAlive(settings.isTcpKeepAlive());
+    }
+
+    private SdkAsyncHttpClient.Builder<?> nettyHttpClient(ClientSettings settings) {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(settings.getAsyncMaxConcurrency())
+                .connectionAcquisitionTimeout(settings.getConnectionAcquisitionTimeout())
+                .connectionTimeout(settings.getConnectionTimeout())
+                .readTimeout(settings.getSocketTimeout())
+                .writeTimeout(settings.getSocketTimeout())
+                .connectionMaxIdleTime(settings.getConnectionMaxIdleTime())
+                .useIdleConnectionReaper(settings.isIdleConnectionReaper())
+                .tcpKeepAlive(settings.isTcpKeepAlive());
+    }
+
+    private ClientOverrideConfiguration overrideConfiguration(ClientSettings settings, String client) {
+        return ClientOverrideConfiguration.builder()
+                .apiCallAttemptTimeout(settings.getApiCallAttemptTimeout())
+                .apiCallTimeout(settings.getApiCallTimeout())
+                .addMetricPublisher(new HttpPoolMetricPublisher(meterRegistry, client))
+                .addExecutionInterceptor(new AwsSdkMetricsInterceptor(meterRegistry, observationRegistry, client))
                 .build();
     }
 }
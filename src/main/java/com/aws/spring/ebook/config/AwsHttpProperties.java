@@ -0,0 +1,34 @@
+package com.aws.spring.ebook.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "aws.http")
+public class AwsHttpProperties {
+
+    private ClientSettings s3 = new ClientSettings();
+    private ClientSettings dynamodb = new ClientSettings();
+    private ClientSettings sqs = new ClientSettings();
+    private ClientSettings sns = new ClientSettings();
+
+    @Data
+    public static class ClientSettings {
+        // Connection pool size of the blocking (Apache) client
+        private int maxConnections = 50;
+        // Concurrent requests of the async (Netty) client
+        private int asyncMaxConcurrency = 500;
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+        // Must stay above the SQS long-poll wait time
+        private Duration socketTimeout = Duration.ofSeconds(30);
+        private Duration connectionMaxIdleTime = Duration.ofSeconds(60);
+        private boolean idleConnectionReaper = true;
+        private boolean tcpKeepAlive = false;
+        // Per-attempt and whole-call (including retries) timeouts, unset means the SDK default of none
+        private Duration apiCallAttemptTimeout;
+        private Duration apiCallTimeout;
+    }
+}
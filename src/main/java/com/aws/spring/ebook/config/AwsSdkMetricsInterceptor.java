@@ -0,0 +1,132 @@
+package com.aws.spring.ebook.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+// Records every SDK call as aws.sdk.* meters tagged by client, service and operation, so a slow request can be
+// attributed to DynamoDB, S3, SQS or SNS instead of our own code. The latency timer comes from an observation, which
+// also makes each call a trace span and a Server-Timing entry of the request that issued it.
+public class AwsSdkMetricsInterceptor implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Observation> OBSERVATION = new ExecutionAttribute<>("MetricsObservation");
+    private static final ExecutionAttribute<Integer> ATTEMPTS = new ExecutionAttribute<>("MetricsAttempts");
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final String client;
+
+    public AwsSdkMetricsInterceptor(MeterRegistry meterRegistry, ObservationRegistry observationRegistry, String client) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.client = client;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        String service = service(executionAttributes);
+        String operation = operation(executionAttributes);
+        // Started on the calling thread, so the current observation (service method, request) becomes the parent;
+        // no scope is opened because async calls complete on another thread
+        Observation observation = Observation.createNotStarted("aws.sdk.calls", observationRegistry)
+                .contextualName(service + "." + operation)
+                .lowCardinalityKeyValue("client", client)
+                .lowCardinalityKeyValue("service", service)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        executionAttributes.putAttribute(OBSERVATION, observation);
+        executionAttributes.putAttribute(ATTEMPTS, 0);
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        // Called once per HTTP attempt, so everything past the first is a retry
+        Integer attempts = executionAttributes.getAttribute(ATTEMPTS);
+        executionAttributes.putAttribute(ATTEMPTS, attempts == null ? 1 : attempts + 1);
+
+        // The signed request carries Content-Length for sync and async bodies alike
+        context.httpRequest().firstMatchingHeader("Content-Length")
+                .map(Long::parseLong)
+                .ifPresent(length -> bytes(executionAttributes, "sent").record(length));
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        // Streaming bodies (GetObject) are not read yet, so the declared length stands in for the transferred bytes
+        context.httpResponse().firstMatchingHeader("Content-Length")
+                .map(Long::parseLong)
+                .ifPresent(length -> bytes(executionAttributes, "received").record(length));
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        record(executionAttributes, "success", String.valueOf(context.httpResponse().statusCode()), null);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        Throwable failure = context.exception();
+        String status = context.httpResponse().map(response -> String.valueOf(response.statusCode())).orElse("none");
+        record(executionAttributes, "error", status, failure);
+
+        if (failure instanceof AwsServiceException serviceException && serviceException.isThrottlingException()) {
+            Counter.builder("aws.sdk.throttles")
+                    .description("Calls that ultimately failed with a throttling error")
+                    .tags("client", client, "service", service(executionAttributes), "operation", operation(executionAttributes))
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private void record(ExecutionAttributes executionAttributes, String outcome, String status, Throwable failure) {
+        String service = service(executionAttributes);
+        String operation = operation(executionAttributes);
+
+        Observation observation = executionAttributes.getAttribute(OBSERVATION);
+        if (observation != null) {
+            // For streaming responses the call ends once headers arrive, so this is time to first byte
+            observation.lowCardinalityKeyValue("outcome", outcome)
+                    .lowCardinalityKeyValue("status", status);
+            if (failure != null) {
+                observation.error(failure);
+            }
+            observation.stop();
+        }
+
+        Integer attempts = executionAttributes.getAttribute(ATTEMPTS);
+        if (attempts != null && attempts > 1) {
+            Counter.builder("aws.sdk.retries")
+                    .description("HTTP attempts beyond the first")
+                    .tags("client", client, "service", service, "operation", operation)
+                    .register(meterRegistry)
+                    .increment(attempts - 1);
+        }
+    }
+
+    private DistributionSummary bytes(ExecutionAttributes executionAttributes, String direction) {
+        return DistributionSummary.builder("aws.sdk.bytes")
+                .description("Payload bytes per HTTP attempt")
+                .baseUnit("bytes")
+                .tags("client", client, "service", service(executionAttributes), "operation", operation(executionAttributes),
+                        "direction", direction)
+                .register(meterRegistry);
+    }
+
+    private String service(ExecutionAttributes executionAttributes) {
+        String service = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        return service == null ? "unknown" : service;
+    }
+
+    private String operation(ExecutionAttributes executionAttributes) {
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return operation == null ? "unknown" : operation;
+    }
+}
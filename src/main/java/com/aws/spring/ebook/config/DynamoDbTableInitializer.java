@@ -0,0 +1,125 @@
+package com.aws.spring.ebook.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Creates the tables and indexes the app expects; meant for DynamoDB Local / LocalStack, production tables are provisioned separately
+@Component
+@ConditionalOnProperty(name = "aws.dynamodb.create-tables", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class DynamoDbTableInitializer implements InitializingBean {
+
+    private final DynamoDbClient dynamoDbClient;
+
+    @Value("${aws.dynamodb.table-name}")
+    private String tableName;
+
+    @Value("${aws.dynamodb.upload-session-table-name:ebook-upload-sessions}")
+    private String uploadSessionTableName;
+
+    @Value("${aws.dynamodb.content-hash-table-name:ebook-content-hashes}")
+    private String contentHashTableName;
+
+    @Value("${aws.dynamodb.author-index-name:author-title-index}")
+    private String authorIndexName;
+
+    @Value("${aws.dynamodb.genre-index-name:genre-title-index}")
+    private String genreIndexName;
+
+    @Override
+    public void afterPropertiesSet() {
+        List<GlobalSecondaryIndex> indexes = List.of(
+                titleSortedIndex(authorIndexName, "author"),
+                titleSortedIndex(genreIndexName, "genre"));
+
+        if (!tableExists(tableName)) {
+            createTable(tableName, indexes);
+        } else {
+            addMissingIndexes(indexes);
+        }
+        if (!tableExists(uploadSessionTableName)) {
+            createTable(uploadSessionTableName, List.of());
+        }
+        if (!tableExists(contentHashTableName)) {
+            createTable(contentHashTableName, List.of());
+        }
+    }
+
+    private boolean tableExists(String name) {
+        try {
+            dynamoDbClient.describeTable(DescribeTableRequest.builder().tableName(name).build());
+            return true;
+        } catch (ResourceNotFoundException e) {
+            return false;
+        }
+    }
+
+    private void createTable(String name, List<GlobalSecondaryIndex> indexes) {
+        CreateTableRequest.Builder request = CreateTableRequest.builder()
+                .tableName(name)
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .keySchema(KeySchemaElement.builder().attributeName("id").keyType(KeyType.HASH).build())
+                .attributeDefinitions(indexes.isEmpty()
+                        ? List.of(stringAttribute("id"))
+                        : List.of(stringAttribute("id"), stringAttribute("author"), stringAttribute("genre"), stringAttribute("title")));
+        if (!indexes.isEmpty()) {
+            request.globalSecondaryIndexes(indexes);
+        }
+
+        dynamoDbClient.createTable(request.build());
+        dynamoDbClient.waiter().waitUntilTableExists(DescribeTableRequest.builder().tableName(name).build());
+        log.info("Created DynamoDB table {}", name);
+    }
+
+    private void addMissingIndexes(List<GlobalSecondaryIndex> indexes) {
+        Set<String> existing = dynamoDbClient.describeTable(DescribeTableRequest.builder().tableName(tableName).build())
+                .table().globalSecondaryIndexes().stream()
+                .map(GlobalSecondaryIndexDescription::indexName)
+                .collect(Collectors.toSet());
+
+        // DynamoDB accepts only one index creation per UpdateTable call
+        for (GlobalSecondaryIndex index : indexes) {
+            if (existing.contains(index.indexName())) {
+                continue;
+            }
+            String hashKey = index.keySchema().get(0).attributeName();
+            dynamoDbClient.updateTable(UpdateTableRequest.builder()
+                    .tableName(tableName)
+                    .attributeDefinitions(stringAttribute(hashKey), stringAttribute("title"))
+                    .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+                            .create(CreateGlobalSecondaryIndexAction.builder()
+                                    .indexName(index.indexName())
+                                    .keySchema(index.keySchema())
+                                    .projection(index.projection())
+                                    .build())
+                            .build())
+                    .build());
+            dynamoDbClient.waiter().waitUntilTableExists(DescribeTableRequest.builder().tableName(tableName).build());
+            log.info("Created index {} on DynamoDB table {}", index.indexName(), tableName);
+        }
+    }
+
+    private GlobalSecondaryIndex titleSortedIndex(String indexName, String hashKey) {
+        return GlobalSecondaryIndex.builder()
+                .indexName(indexName)
+                .keySchema(KeySchemaElement.builder().attributeName(hashKey).keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("title").keyType(KeyType.RANGE).build())
+                .projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+                .build();
+    }
+
+    private AttributeDefinition stringAttribute(String name) {
+        return AttributeDefinition.builder().attributeName(name).attributeType(ScalarAttributeType.S).build();
+    }
+}
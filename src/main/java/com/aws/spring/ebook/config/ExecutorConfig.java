@@ -0,0 +1,81 @@
+package com.aws.spring.ebook.config;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ExecutorConfig {
+
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOT_FACTORY = ContextSnapshotFactory.builder().build();
+
+    @Value("${aws.dynamodb.scan.max-threads:8}")
+    private int dynamoScanThreads;
+
+    @Value("${aws.s3.upload.max-threads:16}")
+    private int s3UploadThreads;
+
+    @Value("${aws.s3.import.max-concurrency:8}")
+    private int importThreads;
+
+    @Value("${aws.s3.purge.max-concurrency:8}")
+    private int purgeThreads;
+
+    @Value("${aws.s3.cache.fill-threads:4}")
+    private int cacheFillThreads;
+
+    @Value("${aws.s3.download.max-threads:16}")
+    private int s3DownloadThreads;
+
+    // Bounded pool shared by all parallel scan segments, closed by Spring through the inferred shutdown() method
+    @Bean
+    public ExecutorService dynamoScanExecutor() {
+        return fixedPool(dynamoScanThreads, "dynamo-scan-");
+    }
+
+    // Shared by all multipart uploads; each upload additionally limits its own parts in flight
+    @Bean
+    public ExecutorService s3UploadExecutor() {
+        return fixedPool(s3UploadThreads, "s3-upload-");
+    }
+
+    // Runs whole-file uploads of a bulk import; kept apart from s3UploadExecutor so waiting imports never starve their own parts
+    @Bean
+    public ExecutorService ebookImportExecutor() {
+        return fixedPool(importThreads, "ebook-import-");
+    }
+
+    // DeleteObjects batches of bucket purges
+    @Bean
+    public ExecutorService s3PurgeExecutor() {
+        return fixedPool(purgeThreads, "s3-purge-");
+    }
+
+    // Copies S3 objects into the disk cache; waiting downloads block on the fill, not these threads on them
+    @Bean
+    public ExecutorService s3CacheFillExecutor() {
+        return fixedPool(cacheFillThreads, "s3-cache-fill-");
+    }
+
+    // Shared by all parallel ranged downloads; each download additionally limits its own ranges in flight
+    @Bean
+    public ExecutorService s3DownloadExecutor() {
+        return fixedPool(s3DownloadThreads, "s3-download-");
+    }
+
+    private ExecutorService fixedPool(int threads, String threadNamePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory(threadNamePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        // Tasks run inside the submitter's observation, so their SDK calls join the request's trace and Server-Timing
+        return ContextExecutorService.wrap(executor, CONTEXT_SNAPSHOT_FACTORY::captureAll);
+    }
+}
@@ -0,0 +1,56 @@
+package com.aws.spring.ebook.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The SDK reports connection pool occupancy with every API call attempt; we keep the latest sample per client
+// and expose it as Micrometer gauges (aws.http.pool.*) so pool sizes can be tuned from data.
+public class HttpPoolMetricPublisher implements MetricPublisher {
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicInteger max = new AtomicInteger();
+
+    public HttpPoolMetricPublisher(MeterRegistry meterRegistry, String client) {
+        register(meterRegistry, "aws.http.pool.leased", "Connections currently in use", client, leased);
+        register(meterRegistry, "aws.http.pool.pending", "Requests waiting for a connection", client, pending);
+        register(meterRegistry, "aws.http.pool.available", "Idle connections ready for reuse", client, available);
+        register(meterRegistry, "aws.http.pool.max", "Configured pool size", client, max);
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        record(metricCollection, HttpMetric.LEASED_CONCURRENCY, leased);
+        record(metricCollection, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, pending);
+        record(metricCollection, HttpMetric.AVAILABLE_CONCURRENCY, available);
+        record(metricCollection, HttpMetric.MAX_CONCURRENCY, max);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void register(MeterRegistry meterRegistry, String name, String description, String client, AtomicInteger value) {
+        Gauge.builder(name, value, AtomicInteger::get)
+                .description(description)
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+
+    private void record(MetricCollection metricCollection, SdkMetric<Integer> metric, AtomicInteger target) {
+        // HTTP metrics live in the per-attempt child collections, so walk the whole tree and keep the last value
+        List<Integer> values = metricCollection.metricValues(metric);
+        if (!values.isEmpty()) {
+            target.set(values.get(values.size() - 1));
+        }
+        metricCollection.children().forEach(child -> record(child, metric, target));
+    }
+}
@@ -0,0 +1,35 @@
+package com.aws.spring.ebook.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.aop.ObservedAspect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Spans are sampled with management.tracing.sampling.probability and exported over OTLP to
+// management.otlp.tracing.endpoint; observations themselves (metrics, Server-Timing) are always recorded
+@Configuration
+public class ObservabilityConfig {
+
+    // Turns @Observed classes (controller, service, repository and S3 layers) into observations and thus spans
+    @Bean
+    public ObservedAspect observedAspect(ObservationRegistry observationRegistry) {
+        return new ObservedAspect(observationRegistry);
+    }
+
+    // SDK call latency is recorded through observations, so its histogram is requested here instead of on the timer
+    @Bean
+    public MeterFilter awsSdkCallsHistogram() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals("aws.sdk.calls")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        };
+    }
+}
@@ -1,98 +1,214 @@
 package com.aws.spring.ebook.controller;
 
+import com.aws.spring.ebook.controller.support.ConditionalRequests;
+import com.aws.spring.ebook.controller.support.S3DownloadResponder;
+import com.aws.spring.ebook.controller.support.StreamingMultipartParser;
+import com.aws.spring.ebook.controller.support.StreamingMultipartParser.StreamedUpload;
+import com.aws.spring.ebook.dto.BulkImportItem;
+import com.aws.spring.ebook.dto.BulkImportResult;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.dto.EbookPage;
 import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.exception.BadRequestException;
 import com.aws.spring.ebook.service.EbookService;
+import io.micrometer.observation.annotation.Observed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.net.URLConnection;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/ebooks")
 @RequiredArgsConstructor
 @Tag(name = "Ebook Management", description = "API for managing eBooks")
+@Observed(name = "ebook.controller")
 public class EbookController {
 
     private final EbookService ebookService;
+    private final S3DownloadResponder s3DownloadResponder;
+    private final StreamingMultipartParser streamingMultipartParser;
 
-    @Operation(summary = "Get all eBooks", description = "Retrieve a list of all eBooks")
+    @Value("${aws.s3.download.redirect:false}")
+    private boolean redirectDownloads;
+
+    @Operation(summary = "Get all eBooks", description = "Retrieve one page of eBooks; pass nextToken from the previous page to continue")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved eBooks"),
+            @ApiResponse(responseCode = "400", description = "Invalid page size or continuation token", content = @Content),
             @ApiResponse(responseCode = "404", description = "No eBooks found", content = @Content)
     })
     @GetMapping
-    public ResponseEntity<List<Ebook>> getAllEbooks() {
-        List<Ebook> ebooks = ebookService.getAllEbooks();
-        return ebooks.isEmpty() ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(null) : ResponseEntity.ok(ebooks);
+    public CompletableFuture<ResponseEntity<EbookPage>> getAllEbooks(@Parameter(description = "Maximum number of eBooks per page") @RequestParam(defaultValue = "50") int pageSize,
+                                                                     @Parameter(description = "Continuation token from the previous page") @RequestParam(required = false) String nextToken) {
+        return ebookService.getEbooksAsync(pageSize, nextToken).thenApply(page -> {
+            boolean firstPageEmpty = nextToken == null && page.getItems().isEmpty() && page.getNextToken() == null;
+            return firstPageEmpty ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(null) : ResponseEntity.ok(page);
+        });
+    }
+
+    @Operation(summary = "Get eBooks by author", description = "Retrieve one page of an author's eBooks sorted by title")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved eBooks"),
+            @ApiResponse(responseCode = "400", description = "Invalid page size or continuation token", content = @Content)
+    })
+    @GetMapping("/author/{author}")
+    public ResponseEntity<EbookPage> getEbooksByAuthor(@PathVariable String author,
+                                                       @Parameter(description = "Maximum number of eBooks per page") @RequestParam(defaultValue = "50") int pageSize,
+                                                       @Parameter(description = "Continuation token from the previous page") @RequestParam(required = false) String nextToken,
+                                                       @Parameter(description = "Sort order by title: asc or desc") @RequestParam(defaultValue = "asc") String sort) {
+        return ResponseEntity.ok(ebookService.getEbooksByAuthor(author, pageSize, nextToken, isDescending(sort)));
+    }
+
+    @Operation(summary = "Get eBooks by genre", description = "Retrieve one page of a genre's eBooks sorted by title")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved eBooks"),
+            @ApiResponse(responseCode = "400", description = "Invalid page size or continuation token", content = @Content)
+    })
+    @GetMapping("/genre/{genre}")
+    public ResponseEntity<EbookPage> getEbooksByGenre(@PathVariable String genre,
+                                                      @Parameter(description = "Maximum number of eBooks per page") @RequestParam(defaultValue = "50") int pageSize,
+                                                      @Parameter(description = "Continuation token from the previous page") @RequestParam(required = false) String nextToken,
+                                                      @Parameter(description = "Sort order by title: asc or desc") @RequestParam(defaultValue = "asc") String sort) {
+        return ResponseEntity.ok(ebookService.getEbooksByGenre(genre, pageSize, nextToken, isDescending(sort)));
     }
 
-    @Operation(summary = "Get eBook by ID", description = "Retrieve an eBook by its ID")
+    @Operation(summary = "Get eBook by ID", description = "Retrieve an eBook by its ID. " +
+            "The response carries an ETag derived from the eBook's version; send it back as If-None-Match to revalidate.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved eBook"),
+            @ApiResponse(responseCode = "304", description = "eBook unchanged since the given ETag", content = @Content),
             @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content)
     })
     @GetMapping("/{ebookId}")
-    public ResponseEntity<Ebook> getEbook(@Parameter(description = "ID of the eBook to be retrieved") @PathVariable String ebookId) {
-        Ebook ebook = ebookService.getEbook(ebookId);
-        return ebook == null ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(null) : ResponseEntity.ok(ebook);
+    public CompletableFuture<ResponseEntity<Ebook>> getEbook(@Parameter(description = "ID of the eBook to be retrieved") @PathVariable String ebookId,
+                                                             @RequestHeader HttpHeaders headers) {
+        return ebookService.getEbookAsync(ebookId).thenApply(ebook -> {
+            if (ebook == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            String eTag = eTagOf(ebook);
+            if (ConditionalRequests.matchesIfNoneMatch(headers, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            return ResponseEntity.ok().eTag(eTag).body(ebook);
+        });
     }
 
-    @Operation(summary = "Download eBook", description = "Download the eBook file by ID")
+    @Operation(summary = "Download eBook",
+            description = "Download the eBook file by ID. In redirect mode the response is a 302 to a presigned S3 URL instead.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully downloaded eBook"),
-            @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content)
+            @ApiResponse(responseCode = "206", description = "Requested byte range(s) of the eBook"),
+            @ApiResponse(responseCode = "304", description = "eBook unchanged since If-None-Match / If-Modified-Since", content = @Content),
+            @ApiResponse(responseCode = "302", description = "Redirect to a presigned S3 URL", content = @Content),
+            @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content),
+            @ApiResponse(responseCode = "416", description = "Requested range not satisfiable", content = @Content)
     })
     @GetMapping("/download/{ebookId}")
-    public ResponseEntity<byte[]> downloadEbook(@Parameter(description = "ID of the eBook to download") @PathVariable String ebookId) throws IOException {
-        byte[] ebookContent = ebookService.downloadEbook(ebookId);
-        String fileName = ebookService.getObjectName(ebookId);
-        String contentType = URLConnection.guessContentTypeFromName(fileName);
-        contentType = contentType == null ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType;
+    public ResponseEntity<StreamingResponseBody> downloadEbook(@Parameter(description = "ID of the eBook to download") @PathVariable String ebookId,
+                                                               @Parameter(description = "Overrides the configured download mode") @RequestParam(required = false) Boolean redirect,
+                                                               @RequestHeader HttpHeaders headers) {
+        if (redirect != null ? redirect : redirectDownloads) {
+            // The client follows the redirect and fetches the bytes (ranges included) straight from S3
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(ebookService.getDownloadUrl(ebookId)))
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
 
-        return ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(ebookContent);
+        String fileName = ebookService.getObjectName(ebookId);
+        return s3DownloadResponder.download(headers, fileName, fillOnMiss -> ebookService.getCachedEbookFile(ebookId, fillOnMiss),
+                () -> ebookService.getEbookFileDetails(ebookId), options -> ebookService.streamEbook(ebookId, options));
     }
 
-    @Operation(summary = "Create a new eBook", description = "Upload a new eBook with metadata")
+    @Operation(summary = "Create a new eBook", description = "Upload a new eBook with metadata. " +
+            "The optional sha256 (hex) of the file lets an already stored copy be reused without uploading it to S3 again.")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "201", description = "Successfully created eBook")
+            @ApiResponse(responseCode = "201", description = "Successfully created eBook"),
+            @ApiResponse(responseCode = "400", description = "sha256 does not match the uploaded file", content = @Content)
     })
     @PostMapping
     public ResponseEntity<Ebook> createEbook(@RequestParam MultipartFile file,
                                              @RequestParam String title,
                                              @RequestParam String author,
-                                             @RequestParam String genre) throws IOException {
-        Ebook ebook = ebookService.createEbook(file, title, author, genre);
+                                             @RequestParam String genre,
+                                             @RequestParam(required = false) String sha256) throws IOException {
+        Ebook ebook = ebookService.createEbook(file, title, author, genre, sha256);
         return ResponseEntity.status(HttpStatus.CREATED).body(ebook);
     }
 
-    @Operation(summary = "Update an eBook", description = "Update an existing eBook")
+    @Operation(summary = "Create a new eBook (streaming)",
+            description = "Upload a new eBook as multipart/form-data that is forwarded to S3 while it is received. " +
+                    "The title, author and genre fields (and the optional sha256) must be sent before the file part.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Successfully created eBook"),
+            @ApiResponse(responseCode = "400", description = "Missing fields or file part", content = @Content)
+    })
+    @PostMapping(value = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Ebook> createEbookStreaming(HttpServletRequest request) throws IOException {
+        String ebookId = ebookService.reserveEbookId();
+        StreamedUpload<S3ObjectDetails> upload = streamingMultipartParser.parse(request, "file",
+                (fields, fileName, contentType, content) -> {
+                    // Reject before any bytes go to S3, so a bad request never leaves an orphaned object behind
+                    requireFields(fields, "title", "author", "genre");
+                    return ebookService.uploadEbookFile(ebookId, content, fileName, contentType, fields.get("sha256"));
+                });
+
+        Map<String, String> fields = upload.fields();
+        Ebook ebook = ebookService.createEbook(ebookId, upload.file(), fields.get("title"), fields.get("author"), fields.get("genre"));
+        return ResponseEntity.status(HttpStatus.CREATED).body(ebook);
+    }
+
+    @Operation(summary = "Bulk import eBooks",
+            description = "Upload many eBook files in one multipart request. The manifest part is a JSON array of " +
+                    "{fileName, title, author, genre} entries matched to the file parts by their original file name.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import finished, see the per-item results"),
+            @ApiResponse(responseCode = "400", description = "Missing manifest or files", content = @Content)
+    })
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<BulkImportResult>> importEbooks(@RequestPart List<BulkImportItem> manifest,
+                                                               @RequestPart List<MultipartFile> files) {
+        return ResponseEntity.ok(ebookService.importEbooks(files, manifest));
+    }
+
+    @Operation(summary = "Update an eBook", description = "Update the supplied fields of an existing eBook. " +
+            "Pass the version of the eBook last read as `version` to reject the update if it changed in the meantime.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully updated eBook"),
-            @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content)
+            @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content),
+            @ApiResponse(responseCode = "409", description = "eBook was modified since the given version", content = @Content)
     })
     @PutMapping("/{ebookId}")
     public ResponseEntity<Ebook> updateEbook(@PathVariable String ebookId,
                                              @RequestParam(required = false) String title,
                                              @RequestParam(required = false) String author,
                                              @RequestParam(required = false) String genre,
+                                             @RequestParam(required = false) String sha256,
+                                             @RequestParam(required = false) Long version,
                                              @RequestPart(required = false) MultipartFile newFile) throws IOException {
-        Ebook ebook = ebookService.updateEbook(ebookId, title, author, genre, newFile);
-        return ebook == null ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(null) : ResponseEntity.ok(ebook);
+        Ebook ebook = ebookService.updateEbook(ebookId, title, author, genre, newFile, sha256, version);
+        return ResponseEntity.ok().eTag(eTagOf(ebook)).body(ebook);
     }
 
     @Operation(summary = "Delete eBook", description = "Delete an eBook by its ID")
@@ -101,7 +217,29 @@ public class EbookController {
             @ApiResponse(responseCode = "404", description = "eBook not found", content = @Content)
     })
     @DeleteMapping("/{ebookId}")
-    public ResponseEntity<Void> deleteEbook(@PathVariable String ebookId) {
-        return ebookService.deleteEbook(ebookId) ? ResponseEntity.noContent().build() : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    public CompletableFuture<ResponseEntity<Void>> deleteEbook(@PathVariable String ebookId) {
+        // An unknown id fails the future with EBookNotFoundException, which GlobalExceptionHandler turns into the 404
+        return ebookService.deleteEbookAsync(ebookId).thenApply(ignored -> ResponseEntity.noContent().build());
+    }
+
+    // Every change bumps the version (a new file included), so it is a strong validator for the representation
+    private String eTagOf(Ebook ebook) {
+        return "\"" + ebook.getVersion() + "\"";
+    }
+
+    private boolean isDescending(String sort) {
+        if (!sort.equalsIgnoreCase("asc") && !sort.equalsIgnoreCase("desc")) {
+            throw new BadRequestException("sort must be asc or desc");
+        }
+        return sort.equalsIgnoreCase("desc");
+    }
+
+    private void requireFields(Map<String, String> fields, String... names) {
+        List<String> missing = Arrays.stream(names)
+                .filter(name -> fields.get(name) == null || fields.get(name).isBlank())
+                .toList();
+        if (!missing.isEmpty()) {
+            throw new BadRequestException("Missing form fields before the file part: " + String.join(", ", missing));
+        }
     }
 }
@@ -0,0 +1,53 @@
+package com.aws.spring.ebook.controller;
+
+import com.aws.spring.ebook.dto.DirectUploadCompletion;
+import com.aws.spring.ebook.dto.DirectUploadRequest;
+import com.aws.spring.ebook.dto.DirectUploadTicket;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.service.EbookService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/ebooks/uploads")
+@RequiredArgsConstructor
+@Tag(name = "Ebook Direct Uploads", description = "API for uploading eBook files straight to S3 through presigned URLs")
+public class EbookUploadController {
+
+    private final EbookService ebookService;
+
+    @Operation(summary = "Start a direct upload",
+            description = "Reserves an eBook id and returns a presigned PUT URL, or presigned part URLs when contentLength " +
+                    "is above the multipart threshold. Upload the file there, then call the complete endpoint.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Upload URLs issued"),
+            @ApiResponse(responseCode = "400", description = "Missing fileName", content = @Content)
+    })
+    @PostMapping
+    public ResponseEntity<DirectUploadTicket> startUpload(@RequestBody DirectUploadRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(ebookService.startDirectUpload(request));
+    }
+
+    @Operation(summary = "Complete a direct upload",
+            description = "Verifies the uploaded object and registers the eBook. For multipart uploads send the uploadId " +
+                    "and the parts as [{partNumber, etag}] with the ETag header S3 returned for each part.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Successfully created eBook"),
+            @ApiResponse(responseCode = "400", description = "Missing fields, or the object was not uploaded", content = @Content),
+            @ApiResponse(responseCode = "409", description = "The eBook id is already registered", content = @Content)
+    })
+    @PostMapping("/{ebookId}/complete")
+    public ResponseEntity<Ebook> completeUpload(@Parameter(description = "Id returned when the upload was started") @PathVariable String ebookId,
+                                                @RequestBody DirectUploadCompletion completion) {
+        Ebook ebook = ebookService.completeDirectUpload(ebookId, completion);
+        return ResponseEntity.status(HttpStatus.CREATED).body(ebook);
+    }
+}
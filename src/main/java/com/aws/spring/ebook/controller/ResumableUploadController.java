@@ -0,0 +1,92 @@
+package com.aws.spring.ebook.controller;
+
+import com.aws.spring.ebook.dto.ResumableUploadRequest;
+import com.aws.spring.ebook.dto.ResumableUploadStatus;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.service.ResumableUploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/ebooks/resumable")
+@RequiredArgsConstructor
+@Tag(name = "Ebook Resumable Uploads", description = "API for uploading large eBook files in resumable chunks")
+public class ResumableUploadController {
+
+    private final ResumableUploadService resumableUploadService;
+
+    @Operation(summary = "Create an upload session",
+            description = "Starts a resumable upload. Send the file as chunks of exactly partSize bytes (the last one may be shorter).")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Session created"),
+            @ApiResponse(responseCode = "400", description = "Missing fields", content = @Content)
+    })
+    @PostMapping
+    public ResponseEntity<ResumableUploadStatus> createSession(@RequestBody ResumableUploadRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(resumableUploadService.createSession(request));
+    }
+
+    @Operation(summary = "Upload a chunk", description = "Uploads chunk N (1-based) as the raw request body. Re-sending a chunk replaces it. " +
+            "Every chunk must be exactly partSize bytes except the last one, which is sent with final=true and may be shorter.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Chunk stored"),
+            @ApiResponse(responseCode = "400", description = "Invalid chunk number or size, or a chunk after the final one", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Session not found", content = @Content)
+    })
+    @PutMapping("/{sessionId}/chunks/{partNumber}")
+    public ResponseEntity<ResumableUploadStatus> uploadChunk(@PathVariable String sessionId,
+                                                             @Parameter(description = "1-based chunk number") @PathVariable int partNumber,
+                                                             @Parameter(description = "Marks the last chunk of the file") @RequestParam(name = "final", defaultValue = "false") boolean last,
+                                                             HttpServletRequest request) throws IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            throw new BadRequestException("Chunks must be sent with a Content-Length header");
+        }
+
+        return ResponseEntity.ok(resumableUploadService.uploadChunk(sessionId, partNumber, request.getInputStream(), contentLength, last));
+    }
+
+    @Operation(summary = "Get upload progress", description = "Returns the stored chunks and the offset to resume from")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Session status"),
+            @ApiResponse(responseCode = "404", description = "Session not found", content = @Content)
+    })
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<ResumableUploadStatus> getStatus(@PathVariable String sessionId) {
+        return ResponseEntity.ok(resumableUploadService.getStatus(sessionId));
+    }
+
+    @Operation(summary = "Complete an upload session", description = "Assembles the chunks and creates the eBook")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Successfully created eBook"),
+            @ApiResponse(responseCode = "400", description = "Chunks are missing", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Session not found", content = @Content)
+    })
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<Ebook> completeSession(@PathVariable String sessionId) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(resumableUploadService.completeSession(sessionId));
+    }
+
+    @Operation(summary = "Abort an upload session", description = "Discards the session and every chunk uploaded so far")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Session aborted"),
+            @ApiResponse(responseCode = "404", description = "Session not found", content = @Content)
+    })
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(@PathVariable String sessionId) {
+        resumableUploadService.abortSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,22 +1,29 @@
 package com.aws.spring.ebook.controller;
 
+import com.aws.spring.ebook.controller.support.S3DownloadResponder;
+import com.aws.spring.ebook.controller.support.StreamingMultipartParser;
+import com.aws.spring.ebook.controller.support.StreamingMultipartParser.StreamedUpload;
 import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.exception.BadRequestException;
 import com.aws.spring.ebook.service.S3FileService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URLConnection;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
@@ -26,6 +33,9 @@ import java.util.List;
 public class S3FileController {
 
     private final S3FileService s3FileService;
+    private final S3DownloadResponder s3DownloadResponder;
+    private final StreamingMultipartParser streamingMultipartParser;
+    private final ObjectMapper objectMapper;
 
     @Value("${aws.s3.bucket-name}")
     private String defaultBucketName;
@@ -38,28 +48,51 @@ public class S3FileController {
         return ResponseEntity.ok(objects);
     }
 
+    @Operation(summary = "Stream the objects of an S3 bucket",
+            description = "Follows every listing page and writes one JSON object per line (NDJSON) with key, size and lastModified. " +
+                    "With a delimiter, common prefixes are returned as entries with commonPrefix=true.")
+    @GetMapping(value = "/list/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamObjects(@RequestParam(required = false) String bucketName,
+                                                               @RequestParam(required = false) String prefix,
+                                                               @RequestParam(required = false) String delimiter,
+                                                               @RequestParam(required = false) Integer maxKeys) {
+        if (maxKeys != null && maxKeys < 1) {
+            throw new BadRequestException("maxKeys must be positive");
+        }
+        String bucket = (bucketName == null || bucketName.isEmpty()) ? defaultBucketName : bucketName;
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> {
+                    s3FileService.listObjectsFromS3(bucket, prefix, delimiter, maxKeys, summary -> {
+                        try {
+                            // writeValueAsBytes, since writeValue(OutputStream) would close the response stream
+                            outputStream.write(objectMapper.writeValueAsBytes(summary));
+                            outputStream.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    outputStream.flush();
+                });
+    }
+
     @Operation(summary = "Download a file from an S3 bucket")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "File downloaded successfully"),
-            @ApiResponse(responseCode = "404", description = "File not found")
+            @ApiResponse(responseCode = "206", description = "Requested byte range(s) of the file"),
+            @ApiResponse(responseCode = "304", description = "File unchanged since If-None-Match / If-Modified-Since"),
+            @ApiResponse(responseCode = "404", description = "File not found"),
+            @ApiResponse(responseCode = "416", description = "Requested range not satisfiable")
     })
     @GetMapping("/download")
-    public ResponseEntity<byte[]> downloadFile(@RequestParam(required = false) String bucketName,
-                                               @RequestParam String key) throws IOException {
-        bucketName = (bucketName == null || bucketName.isEmpty()) ? defaultBucketName : bucketName;
-
-        byte[] ebookContent;
-        try (InputStream inputStream = s3FileService.downloadFileFromS3(bucketName, key)) {
-            ebookContent = inputStream.readAllBytes();
-        }
-
-        String contentType = URLConnection.guessContentTypeFromName(key);
-        contentType = contentType == null ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType;
+    public ResponseEntity<StreamingResponseBody> downloadFile(@RequestParam(required = false) String bucketName,
+                                                              @RequestParam String key,
+                                                              @RequestHeader HttpHeaders headers) {
+        String bucket = (bucketName == null || bucketName.isEmpty()) ? defaultBucketName : bucketName;
 
-        return ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=\"" + key + "\"")
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(ebookContent);
+        return s3DownloadResponder.download(headers, key, fillOnMiss -> s3FileService.getCachedFile(bucket, key, fillOnMiss),
+                () -> s3FileService.getObjectDetails(bucket, key), options -> s3FileService.downloadFileFromS3(bucket, key, options));
     }
 
     @Operation(summary = "Upload a file to S3")
@@ -77,6 +110,29 @@ public class S3FileController {
         return ResponseEntity.status(HttpStatus.CREATED).body(uploadedFileDetails);
     }
 
+    @Operation(summary = "Upload a file to S3 (streaming)",
+            description = "Multipart upload forwarded to S3 while it is received. Send the ebookId (and optional bucketName) " +
+                    "fields before the file part.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "File uploaded successfully"),
+            @ApiResponse(responseCode = "400", description = "Missing ebookId field or file part")
+    })
+    @PostMapping(value = "/upload/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<S3ObjectDetails> uploadFileStreaming(HttpServletRequest request) throws IOException {
+        StreamedUpload<S3ObjectDetails> upload = streamingMultipartParser.parse(request, "file",
+                (fields, fileName, contentType, content) -> {
+                    String ebookId = fields.get("ebookId");
+                    if (ebookId == null || ebookId.isBlank()) {
+                        throw new BadRequestException("Missing form field before the file part: ebookId");
+                    }
+                    String bucketName = fields.get("bucketName");
+                    bucketName = (bucketName == null || bucketName.isEmpty()) ? defaultBucketName : bucketName;
+                    return s3FileService.uploadStreamToS3(bucketName, content, fileName, contentType, ebookId);
+                });
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(upload.file());
+    }
+
     @Operation(summary = "Delete a specific file from S3")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "File deleted successfully")
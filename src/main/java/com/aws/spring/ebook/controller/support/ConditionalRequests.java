@@ -0,0 +1,35 @@
+package com.aws.spring.ebook.controller.support;
+
+import org.springframework.http.HttpHeaders;
+
+// If-None-Match evaluation (RFC 9110 section 13.1.2) shared by the metadata and download endpoints
+public final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    // True when the client already holds the representation tagged eTag, so a 304 can replace the body
+    public static boolean matchesIfNoneMatch(HttpHeaders requestHeaders, String eTag) {
+        String ifNoneMatch = requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+
+        // If-None-Match uses the weak comparison, so W/ prefixes are ignored on both sides
+        String opaqueTag = stripWeak(eTag);
+        for (String candidate : requestHeaders.getIfNoneMatch()) {
+            if (stripWeak(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String eTag) {
+        String tag = eTag.trim();
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
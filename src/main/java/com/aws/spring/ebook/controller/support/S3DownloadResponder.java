@@ -0,0 +1,444 @@
+package com.aws.spring.ebook.controller.support;
+
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Component
+public class S3DownloadResponder {
+
+    private static final String CRLF = "\r\n";
+
+    @Value("${aws.s3.download.buffer-size:8192}")
+    private int bufferSize;
+
+    public ResponseEntity<StreamingResponseBody> stream(ResponseInputStream<GetObjectResponse> s3Object, String fileName) {
+        ResponseEntity.BodyBuilder builder = headers(ResponseEntity.ok(), s3Object.response(), fileName)
+                .contentType(guessContentType(fileName));
+
+        // Content-Length comes from the S3 object metadata so clients see progress without us buffering
+        Long contentLength = s3Object.response().contentLength();
+        if (contentLength != null) {
+            builder.contentLength(contentLength);
+        }
+
+        return builder.body(outputStream -> pipe(s3Object, outputStream));
+    }
+
+    // Serves whole-object and single-range requests from the local disk cache when it holds the object; the cache
+    // function takes whether a miss should start filling the cache and never waits for that fill
+    public ResponseEntity<StreamingResponseBody> download(HttpHeaders requestHeaders, String fileName,
+                                                          Function<Boolean, CachedS3Object> cache,
+                                                          Supplier<S3ObjectDetails> head,
+                                                          Function<S3DownloadOptions, ResponseInputStream<GetObjectResponse>> fetcher) {
+        // If-Range and multi-range requests are rare enough to leave to S3
+        List<HttpRange> ranges = parseRanges(requestHeaders.getFirst(HttpHeaders.RANGE));
+        if (requestHeaders.getFirst(HttpHeaders.IF_RANGE) == null && ranges.size() <= 1) {
+            // A range or conditional request that misses is worth a few bytes or a 304 from S3, not a whole-object fill
+            boolean fillOnMiss = ranges.isEmpty() && requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH) == null
+                    && requestHeaders.getFirst(HttpHeaders.IF_MODIFIED_SINCE) == null;
+            CachedS3Object cached = cache.apply(fillOnMiss);
+            if (cached != null) {
+                ResponseEntity<StreamingResponseBody> response = fromCache(requestHeaders, cached, fileName);
+                if (response != null) {
+                    return response;
+                }
+            }
+        }
+        return download(requestHeaders, fileName, head, fetcher);
+    }
+
+    // head is only called for multi-range requests, which need the object length before their first GET
+    public ResponseEntity<StreamingResponseBody> download(HttpHeaders requestHeaders, String fileName,
+                                                          Supplier<S3ObjectDetails> head,
+                                                          Function<S3DownloadOptions, ResponseInputStream<GetObjectResponse>> fetcher) {
+        try {
+            return respond(requestHeaders, fileName, head, fetcher);
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+                return notModified(e);
+            }
+            throw e;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> respond(HttpHeaders requestHeaders, String fileName,
+                                                          Supplier<S3ObjectDetails> head,
+                                                          Function<S3DownloadOptions, ResponseInputStream<GetObjectResponse>> fetcher) {
+        // Validators go to S3 with the request, so an unchanged object comes back as a 304 without its bytes
+        List<HttpRange> ranges = parseRanges(requestHeaders.getFirst(HttpHeaders.RANGE));
+        if (ranges.isEmpty()) {
+            return stream(fetcher.apply(validators(requestHeaders)), fileName);
+        }
+
+        S3DownloadOptions options = validators(requestHeaders);
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        Instant ifRangeDate = null;
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"")) {
+                // S3 checks a strong ETag itself and answers 412 when it no longer matches
+                options.setIfMatch(ifRange);
+            } else {
+                // Weak ETags never match for ranged requests, and unparseable dates can't either
+                ifRangeDate = ifRange.startsWith("W/") ? null : ifRangeDate(requestHeaders);
+                if (ifRangeDate == null) {
+                    return stream(fetcher.apply(validators(requestHeaders)), fileName);
+                }
+            }
+        }
+
+        if (ranges.size() > 1) {
+            return multipart(requestHeaders, ranges, options, ifRangeDate, fileName, head, fetcher);
+        }
+
+        options.setRange(HttpRange.toString(ranges));
+        ResponseInputStream<GetObjectResponse> first;
+        try {
+            first = fetcher.apply(options);
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.PRECONDITION_FAILED.value()) {
+                // If-Range validator no longer matches, so the client gets the whole new representation
+                return stream(fetcher.apply(validators(requestHeaders)), fileName);
+            }
+            if (e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                if (ifRangeDate != null) {
+                    // The date could not be checked against the object, and a full response is always allowed
+                    return stream(fetcher.apply(validators(requestHeaders)), fileName);
+                }
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                        .build();
+            }
+            throw e;
+        }
+
+        if (ifRangeDate != null && !sameSecond(first.response().lastModified(), ifRangeDate)) {
+            // A date only validates when it equals Last-Modified exactly (RFC 9110 section 13.1.5); older or newer
+            // dates mean the client's copy may differ, so it gets the whole representation
+            first.abort();
+            return stream(fetcher.apply(validators(requestHeaders)), fileName);
+        }
+
+        String contentRange = first.response().contentRange();
+        if (contentRange == null) {
+            // S3 ignored the range (e.g. empty object) and returned the full body
+            return stream(first, fileName);
+        }
+        return partial(first, contentRange, fileName);
+    }
+
+    private ResponseEntity<StreamingResponseBody> partial(ResponseInputStream<GetObjectResponse> s3Object,
+                                                          String contentRange, String fileName) {
+        ResponseEntity.BodyBuilder builder = headers(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), s3Object.response(), fileName)
+                .header(HttpHeaders.CONTENT_RANGE, contentRange)
+                .contentType(guessContentType(fileName));
+
+        Long contentLength = s3Object.response().contentLength();
+        if (contentLength != null) {
+            builder.contentLength(contentLength);
+        }
+
+        return builder.body(outputStream -> pipe(s3Object, outputStream));
+    }
+
+    private ResponseEntity<StreamingResponseBody> multipart(HttpHeaders requestHeaders, List<HttpRange> ranges,
+                                                            S3DownloadOptions options, Instant ifRangeDate, String fileName,
+                                                            Supplier<S3ObjectDetails> head,
+                                                            Function<S3DownloadOptions, ResponseInputStream<GetObjectResponse>> fetcher) {
+        // A GET serves one range, so the length comes from a HEAD first: unsatisfiable ranges are dropped and only
+        // a request with none left gets a 416 (RFC 9110 section 14.2)
+        S3ObjectDetails object = head.get();
+        if ((options.getIfMatch() != null && !options.getIfMatch().equals(object.getETag()))
+                || (ifRangeDate != null && !sameSecond(lastModifiedOf(object), ifRangeDate))) {
+            // If-Range no longer matches, so the client gets the whole new representation
+            return stream(fetcher.apply(validators(requestHeaders)), fileName);
+        }
+
+        long totalLength = object.getContentLength();
+        List<long[]> parts = new ArrayList<>();
+        long requestedBytes = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(totalLength);
+            if (start >= totalLength) {
+                continue;
+            }
+            long end = range.getRangeEnd(totalLength);
+            parts.add(new long[]{start, end});
+            requestedBytes += end - start + 1;
+        }
+
+        // Same guard as Spring's resource handler: overlapping ranges must not add up to more than the object
+        if (parts.isEmpty() || requestedBytes > totalLength) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + totalLength)
+                    .build();
+        }
+
+        // Every GET is pinned to the version the HEAD described, so the parts and their lengths fit together
+        String eTag = object.getETag();
+        options.setIfMatch(eTag);
+        options.setRange("bytes=" + parts.get(0)[0] + "-" + parts.get(0)[1]);
+        ResponseInputStream<GetObjectResponse> first;
+        try {
+            first = fetcher.apply(options);
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.PRECONDITION_FAILED.value()) {
+                // Replaced since the HEAD; a full response of the new version is always a valid answer
+                return stream(fetcher.apply(validators(requestHeaders)), fileName);
+            }
+            throw e;
+        }
+        if (parts.size() == 1) {
+            return partial(first, first.response().contentRange(), fileName);
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        MediaType partContentType = guessContentType(fileName);
+
+        long contentLength = 0;
+        for (long[] part : parts) {
+            contentLength += partHeader(boundary, partContentType, part, totalLength).length + part[1] - part[0] + 1;
+        }
+        contentLength += closingBoundary(boundary).length;
+
+        return headers(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), first.response(), fileName)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .contentLength(contentLength)
+                .body(outputStream -> {
+                    // Closes the first part's stream even when the client is gone before its header is written
+                    try (first) {
+                        for (int i = 0; i < parts.size(); i++) {
+                            long[] part = parts.get(i);
+                            outputStream.write(partHeader(boundary, partContentType, part, totalLength));
+                            if (i == 0) {
+                                pipe(first, outputStream);
+                            } else {
+                                pipe(fetcher.apply(new S3DownloadOptions("bytes=" + part[0] + "-" + part[1], eTag, null, null)), outputStream);
+                            }
+                        }
+                        outputStream.write(closingBoundary(boundary));
+                        outputStream.flush();
+                    }
+                });
+    }
+
+    private ResponseEntity.BodyBuilder headers(ResponseEntity.BodyBuilder builder, GetObjectResponse response, String fileName) {
+        builder.header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (response.eTag() != null) {
+            builder.eTag(response.eTag());
+        }
+        if (response.lastModified() != null) {
+            builder.lastModified(response.lastModified());
+        }
+        return builder;
+    }
+
+    private ResponseEntity<StreamingResponseBody> fromCache(HttpHeaders requestHeaders, CachedS3Object cached, String fileName) {
+        if (isNotModified(requestHeaders, cached)) {
+            // Answered from the cached validators without asking S3 at all
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cached.getETag());
+            if (cached.getLastModified() != null) {
+                builder.lastModified(cached.getLastModified());
+            }
+            return builder.build();
+        }
+
+        if (!Files.isReadable(cached.getPath())) {
+            // Evicted since the lookup; S3 serves it instead
+            return null;
+        }
+
+        long length = cached.getContentLength();
+        List<HttpRange> ranges = parseRanges(requestHeaders.getFirst(HttpHeaders.RANGE));
+        if (ranges.isEmpty() || length == 0) {
+            return cachedHeaders(ResponseEntity.ok(), cached, fileName)
+                    .contentType(guessContentType(fileName))
+                    .contentLength(length)
+                    .body(outputStream -> transfer(cached, 0, length, outputStream));
+        }
+
+        HttpRange range = ranges.get(0);
+        long start = range.getRangeStart(length);
+        if (start >= length) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+        long end = range.getRangeEnd(length);
+        return cachedHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), cached, fileName)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                .contentType(guessContentType(fileName))
+                .contentLength(end - start + 1)
+                .body(outputStream -> transfer(cached, start, end - start + 1, outputStream));
+    }
+
+    private boolean isNotModified(HttpHeaders requestHeaders, CachedS3Object cached) {
+        if (requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH) != null) {
+            return ConditionalRequests.matchesIfNoneMatch(requestHeaders, cached.getETag());
+        }
+        Instant ifModifiedSince = ifModifiedSince(requestHeaders);
+        // HTTP dates have second precision
+        return ifModifiedSince != null && cached.getLastModified() != null
+                && cached.getLastModified().getEpochSecond() <= ifModifiedSince.getEpochSecond();
+    }
+
+    private ResponseEntity.BodyBuilder cachedHeaders(ResponseEntity.BodyBuilder builder, CachedS3Object cached, String fileName) {
+        builder.header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(cached.getETag());
+        if (cached.getLastModified() != null) {
+            builder.lastModified(cached.getLastModified());
+        }
+        return builder;
+    }
+
+    // The file is only opened once the body is written, so a response that never is (a HEAD request, a client gone
+    // before commit, an async timeout) holds no descriptor; an open file survives its eviction, only a missing one fails
+    private void transfer(CachedS3Object cached, long position, long count, OutputStream outputStream) throws IOException {
+        // transferTo leaves the copying to the OS instead of cycling the bytes through a heap buffer
+        try (FileChannel channel = FileChannel.open(cached.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long end = position + count;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0) {
+                    throw new EOFException("Cached file ended " + (end - position) + " bytes early");
+                }
+                position += sent;
+            }
+            outputStream.flush();
+        }
+    }
+
+    private S3DownloadOptions validators(HttpHeaders requestHeaders) {
+        S3DownloadOptions options = new S3DownloadOptions();
+        String ifNoneMatch = requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present (RFC 9110 section 13.1.3)
+            options.setIfNoneMatch(ifNoneMatch);
+            return options;
+        }
+        options.setIfModifiedSince(ifModifiedSince(requestHeaders));
+        return options;
+    }
+
+    private Instant ifModifiedSince(HttpHeaders requestHeaders) {
+        try {
+            long ifModifiedSince = requestHeaders.getIfModifiedSince();
+            return ifModifiedSince >= 0 ? Instant.ofEpochMilli(ifModifiedSince) : null;
+        } catch (IllegalArgumentException e) {
+            // Unparseable dates are ignored, as RFC 9110 requires
+            return null;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> notModified(S3Exception e) {
+        // S3 echoes the object's validators on its 304, which the client needs to keep its copy fresh
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+        SdkHttpResponse response = e.awsErrorDetails() != null ? e.awsErrorDetails().sdkHttpResponse() : null;
+        if (response != null) {
+            response.firstMatchingHeader(HttpHeaders.ETAG).ifPresent(builder::eTag);
+            response.firstMatchingHeader(HttpHeaders.LAST_MODIFIED)
+                    .ifPresent(lastModified -> builder.header(HttpHeaders.LAST_MODIFIED, lastModified));
+        }
+        return builder.build();
+    }
+
+    private List<HttpRange> parseRanges(String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.isBlank()) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // Malformed Range headers are ignored, as RFC 9110 allows
+            return List.of();
+        }
+    }
+
+    private Instant ifRangeDate(HttpHeaders requestHeaders) {
+        try {
+            ZonedDateTime date = requestHeaders.getFirstZonedDateTime(HttpHeaders.IF_RANGE);
+            return date != null ? date.toInstant() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Instant lastModifiedOf(S3ObjectDetails object) {
+        return object.getLastModified() != null ? Instant.parse(object.getLastModified()) : null;
+    }
+
+    // HTTP dates have second precision
+    private boolean sameSecond(Instant lastModified, Instant date) {
+        return lastModified != null && lastModified.getEpochSecond() == date.getEpochSecond();
+    }
+
+    private byte[] partHeader(String boundary, MediaType contentType, long[] part, long totalLength) {
+        String header = CRLF + "--" + boundary + CRLF
+                + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                + HttpHeaders.CONTENT_RANGE + ": bytes " + part[0] + "-" + part[1] + "/" + totalLength + CRLF
+                + CRLF;
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] closingBoundary(String boundary) {
+        return (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private MediaType guessContentType(String fileName) {
+        String contentType = URLConnection.guessContentTypeFromName(fileName);
+        return contentType == null ? MediaType.APPLICATION_OCTET_STREAM : MediaType.parseMediaType(contentType);
+    }
+
+    private void pipe(ResponseInputStream<GetObjectResponse> s3Object, OutputStream outputStream) throws IOException {
+        // Copy through a small fixed buffer so heap usage stays flat regardless of the object size
+        try {
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = s3Object.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            // Client went away mid-download, drop the S3 connection instead of draining the rest of the object
+            s3Object.abort();
+            throw e;
+        } finally {
+            s3Object.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.aws.spring.ebook.controller.support;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Per-request totals of the observations finished while serving it, rendered as a Server-Timing header value
+public class ServerTiming {
+
+    // Browsers and proxies cap header sizes, and the first entries are the ones worth reading
+    private static final int MAX_ENTRIES = 24;
+
+    private final long startNanos = System.nanoTime();
+    // Observations of one request may finish on SDK and executor threads
+    private final Map<String, long[]> entries = new LinkedHashMap<>();
+
+    public synchronized void record(String name, long durationNanos) {
+        long[] entry = entries.get(name);
+        if (entry == null) {
+            if (entries.size() >= MAX_ENTRIES) {
+                return;
+            }
+            entry = new long[2];
+            entries.put(name, entry);
+        }
+        entry[0] += durationNanos;
+        entry[1]++;
+    }
+
+    public synchronized String toHeaderValue() {
+        StringBuilder header = new StringBuilder();
+        entries.forEach((name, entry) -> {
+            header.append(token(name)).append(";dur=").append(millis(entry[0]));
+            if (entry[1] > 1) {
+                header.append(";desc=\"").append(entry[1]).append(" calls\"");
+            }
+            header.append(", ");
+        });
+        return header.append("total;dur=").append(millis(System.nanoTime() - startNanos)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+
+    // Metric names must be HTTP tokens; observation names such as "EbookServiceImpl#getEbook" mostly are already
+    private static String token(String name) {
+        StringBuilder token = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "!#$%&'*+-.^_`|~".indexOf(c) >= 0;
+            token.append(allowed ? c : '_');
+        }
+        return token.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.aws.spring.ebook.controller.support;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.filter.ServerHttpObservationFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Optional;
+
+// Summarises the controller, service, repository and AWS SDK observations of a request in a Server-Timing header.
+// Off by default: the header exposes internal operation names and backend latencies to whoever sends the request
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private final boolean enabled;
+
+    public ServerTimingFilter(@Value("${ebook.server-timing.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // Runs after Spring's observation filter, which has already started the request's root observation
+        Optional<ServerRequestObservationContext> observationContext = ServerHttpObservationFilter.findObservationContext(request);
+        if (!enabled || observationContext.isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        ServerTiming serverTiming = new ServerTiming();
+        observationContext.get().put(ServerTiming.class, serverTiming);
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, serverTiming);
+        filterChain.doFilter(request, timedResponse);
+        if (!request.isAsyncStarted()) {
+            // Bodiless responses (204, 304) are committed only after the chain returns
+            timedResponse.writeHeader();
+        }
+    }
+
+    // Headers cannot change once the body starts, so the header is written as soon as the body is requested;
+    // for downloads that is after the S3 call but before the bytes stream
+    private static final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final ServerTiming serverTiming;
+        private boolean written;
+
+        private ServerTimingResponse(HttpServletResponse response, ServerTiming serverTiming) {
+            super(response);
+            this.serverTiming = serverTiming;
+        }
+
+        private void writeHeader() {
+            if (!written && !isCommitted()) {
+                setHeader("Server-Timing", serverTiming.toHeaderValue());
+            }
+            written = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeHeader();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeHeader();
+            super.sendRedirect(location);
+        }
+    }
+}
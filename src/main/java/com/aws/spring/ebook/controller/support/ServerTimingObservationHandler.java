@@ -0,0 +1,46 @@
+package com.aws.spring.ebook.controller.support;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationView;
+import org.springframework.stereotype.Component;
+
+// Adds every finished observation to the ServerTiming of the HTTP request it descends from, whichever thread it ends on
+@Component
+public class ServerTimingObservationHandler implements ObservationHandler<Observation.Context> {
+
+    private static final String START_NANOS = ServerTimingObservationHandler.class.getName() + ".start";
+
+    @Override
+    public void onStart(Observation.Context context) {
+        context.put(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        Long start = context.get(START_NANOS);
+        ServerTiming serverTiming = serverTiming(context);
+        if (start == null || serverTiming == null) {
+            return;
+        }
+        String name = context.getContextualName() != null ? context.getContextualName() : context.getName();
+        serverTiming.record(name, System.nanoTime() - start);
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return true;
+    }
+
+    // ServerTimingFilter attaches the accumulator to the request's root observation, so the root itself is never recorded
+    private ServerTiming serverTiming(Observation.Context context) {
+        for (ObservationView parent = context.getParentObservation(); parent != null;
+             parent = parent.getContextView().getParentObservation()) {
+            ServerTiming serverTiming = parent.getContextView().get(ServerTiming.class);
+            if (serverTiming != null) {
+                return serverTiming;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.aws.spring.ebook.controller.support;
+
+import com.aws.spring.ebook.exception.BadRequestException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Walks a multipart body straight off the servlet input stream so the file part can be forwarded to S3 as it
+// arrives instead of being spooled by the multipart resolver. Text fields must precede the file part to be
+// visible to the FilePartHandler.
+@Component
+public class StreamingMultipartParser {
+
+    @Value("${aws.s3.upload.max-form-field-size:65536}")
+    private int maxFormFieldSize;
+
+    public <T> StreamedUpload<T> parse(HttpServletRequest request, String filePartName, FilePartHandler<T> handler) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new BadRequestException("Expected a multipart/form-data request");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        FileItemInputIterator items = upload.getItemIterator(request);
+
+        Map<String, String> fields = new HashMap<>();
+        T file = null;
+        while (items.hasNext()) {
+            FileItemInput item = items.next();
+            try (InputStream content = item.getInputStream()) {
+                if (item.isFormField()) {
+                    fields.put(item.getFieldName(), readField(item.getFieldName(), content));
+                } else if (filePartName.equals(item.getFieldName())) {
+                    if (file != null) {
+                        throw new BadRequestException("Only one '" + filePartName + "' part is allowed");
+                    }
+                    file = handler.handle(Map.copyOf(fields), item.getName(), item.getContentType(), content);
+                }
+            }
+        }
+
+        if (file == null) {
+            throw new BadRequestException("Missing '" + filePartName + "' part");
+        }
+        return new StreamedUpload<>(fields, file);
+    }
+
+    private String readField(String name, InputStream content) throws IOException {
+        byte[] value = content.readNBytes(maxFormFieldSize + 1);
+        if (value.length > maxFormFieldSize) {
+            throw new BadRequestException("Form field '" + name + "' is too large");
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    public interface FilePartHandler<T> {
+        T handle(Map<String, String> fields, String fileName, String contentType, InputStream content) throws IOException;
+    }
+
+    public record StreamedUpload<T>(Map<String, String> fields, T file) {
+    }
+}
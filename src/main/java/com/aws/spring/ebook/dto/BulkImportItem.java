@@ -0,0 +1,16 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImportItem {
+    // Original file name of the multipart file this metadata belongs to
+    private String fileName;
+    private String title;
+    private String author;
+    private String genre;
+}
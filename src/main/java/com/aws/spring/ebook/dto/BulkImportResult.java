@@ -0,0 +1,26 @@
+package com.aws.spring.ebook.dto;
+
+import com.aws.spring.ebook.entity.Ebook;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImportResult {
+    private String fileName;
+    private boolean created;
+    // Set for created items only
+    private Ebook ebook;
+    // Set for failed items only
+    private String error;
+
+    public static BulkImportResult created(String fileName, Ebook ebook) {
+        return new BulkImportResult(fileName, true, ebook, null);
+    }
+
+    public static BulkImportResult failed(String fileName, String error) {
+        return new BulkImportResult(fileName, false, null, error);
+    }
+}
@@ -0,0 +1,20 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedS3Object {
+    // Complete local copy of the object; it may be evicted at any time, so open it before relying on it
+    private Path path;
+    private String eTag;
+    private Instant lastModified;
+    private long contentLength;
+    private String contentType;
+}
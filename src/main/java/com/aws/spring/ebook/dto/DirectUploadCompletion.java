@@ -0,0 +1,20 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectUploadCompletion {
+    private String fileName;
+    private String title;
+    private String author;
+    private String genre;
+    // Only for multipart uploads
+    private String uploadId;
+    private List<UploadedPart> parts;
+}
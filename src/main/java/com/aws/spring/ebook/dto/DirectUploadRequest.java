@@ -0,0 +1,15 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectUploadRequest {
+    private String fileName;
+    private String contentType;
+    // Optional; large files get presigned multipart part URLs instead of a single PUT
+    private Long contentLength;
+}
@@ -0,0 +1,22 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectUploadTicket {
+    private String ebookId;
+    private String key;
+    // Single PUT upload; null for multipart uploads
+    private String uploadUrl;
+    // Multipart upload; the client PUTs part N (1-based) of partSize bytes to partUrls[N - 1]
+    private String uploadId;
+    private Long partSize;
+    private List<String> partUrls;
+    private String expiresAt;
+}
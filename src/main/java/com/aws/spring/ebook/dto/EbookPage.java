@@ -0,0 +1,17 @@
+package com.aws.spring.ebook.dto;
+
+import com.aws.spring.ebook.entity.Ebook;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EbookPage {
+    private List<Ebook> items;
+    // Opaque continuation token, null once the last page has been returned
+    private String nextToken;
+}
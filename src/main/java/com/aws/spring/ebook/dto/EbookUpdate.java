@@ -0,0 +1,18 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EbookUpdate {
+    // Null fields are left unchanged
+    private String title;
+    private String author;
+    private String genre;
+    private String url;
+    // Written together with url; null then removes the hash of the replaced file
+    private String contentHash;
+}
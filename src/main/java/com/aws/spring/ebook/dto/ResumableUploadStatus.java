@@ -0,0 +1,20 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumableUploadStatus {
+    private String sessionId;
+    // Every chunk except the last must be exactly this many bytes
+    private long partSize;
+    private List<Integer> uploadedParts;
+    // First chunk that still has to be sent, and the byte offset it starts at
+    private int nextPartNumber;
+    private long offset;
+}
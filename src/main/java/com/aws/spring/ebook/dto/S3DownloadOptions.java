@@ -0,0 +1,18 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3DownloadOptions {
+    private String range;
+    private String ifMatch;
+    // S3 answers 304 without a body when these match, so revalidation costs no transfer
+    private String ifNoneMatch;
+    private Instant ifModifiedSince;
+}
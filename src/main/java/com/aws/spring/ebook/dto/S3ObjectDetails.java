@@ -15,4 +15,7 @@ public class S3ObjectDetails {
     private String contentType;
     private long contentLength;
     private String lastModified;
+    private String eTag;
+    // Set when the content is registered in the content-hash index
+    private String sha256;
 }
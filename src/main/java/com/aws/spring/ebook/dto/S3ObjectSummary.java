@@ -0,0 +1,19 @@
+package com.aws.spring.ebook.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class S3ObjectSummary {
+    private String key;
+    // size and lastModified are null for common prefixes
+    private Long size;
+    private String lastModified;
+    // True for a common prefix ("folder") rolled up by the delimiter
+    private boolean commonPrefix;
+}
@@ -0,0 +1,14 @@
+package com.aws.spring.ebook.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3UploadResult {
+    private String key;
+    private String eTag;
+    private long contentLength;
+}
@@ -0,0 +1,20 @@
+package com.aws.spring.ebook.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentBlob {
+    // Hex SHA-256 of the object's bytes
+    private String hash;
+    private String key;
+    private String url;
+    private long contentLength;
+    private String eTag;
+    // eBooks pointing at this object; the object is deleted when the last one lets go
+    private long referenceCount;
+    private long createdAt;
+}
@@ -14,4 +14,12 @@ public class Ebook {
     private String author;
     private String genre;
     private String url;
+    // Incremented on every update; items written before versioning count as version 0
+    private Long version;
+    // SHA-256 of the file when it is stored as a shared, reference-counted blob; null for files kept per eBook
+    private String contentHash;
+
+    public Ebook(String ebookId, String title, String author, String genre, String url) {
+        this(ebookId, title, author, genre, url, 1L, null);
+    }
 }
@@ -0,0 +1,29 @@
+package com.aws.spring.ebook.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    // Doubles as the id of the eBook created on completion
+    private String sessionId;
+    private String key;
+    private String uploadId;
+    private String fileName;
+    private String contentType;
+    private String title;
+    private String author;
+    private String genre;
+    private long partSize;
+    // Part number -> ETag of every part S3 has acknowledged
+    private Map<Integer, String> parts;
+    // Number of the chunk sent as the final one, the only chunk allowed to be shorter than partSize; null until then
+    private Integer lastPartNumber;
+    private long createdAt;
+    private long updatedAt;
+}
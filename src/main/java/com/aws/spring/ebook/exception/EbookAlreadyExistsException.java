@@ -0,0 +1,16 @@
+package com.aws.spring.ebook.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class EbookAlreadyExistsException extends RuntimeException {
+    private final String ebookId;
+
+    public EbookAlreadyExistsException(String ebookId) {
+        super(String.format("Ebook %s already exists", ebookId));
+        this.ebookId = ebookId;
+    }
+}
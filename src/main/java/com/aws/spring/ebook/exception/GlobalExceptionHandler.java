@@ -25,6 +25,33 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(errorDetails, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorDetailsResponse> handleBadRequestException(BadRequestException exception,
+                                                                          WebRequest webRequest) {
+        ErrorDetailsResponse errorDetails = new ErrorDetailsResponse(LocalDateTime.now(), exception.getMessage(),
+                webRequest.getDescription(false));
+
+        return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(VersionConflictException.class)
+    public ResponseEntity<ErrorDetailsResponse> handleVersionConflictException(VersionConflictException exception,
+                                                                               WebRequest webRequest) {
+        ErrorDetailsResponse errorDetails = new ErrorDetailsResponse(LocalDateTime.now(), exception.getMessage(),
+                webRequest.getDescription(false));
+
+        return new ResponseEntity<>(errorDetails, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(EbookAlreadyExistsException.class)
+    public ResponseEntity<ErrorDetailsResponse> handleEbookAlreadyExistsException(EbookAlreadyExistsException exception,
+                                                                                  WebRequest webRequest) {
+        ErrorDetailsResponse errorDetails = new ErrorDetailsResponse(LocalDateTime.now(), exception.getMessage(),
+                webRequest.getDescription(false));
+
+        return new ResponseEntity<>(errorDetails, HttpStatus.CONFLICT);
+    }
+
     // handle global exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorDetailsResponse> handleGlobalException(Exception exception,
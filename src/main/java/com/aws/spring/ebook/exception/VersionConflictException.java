@@ -0,0 +1,21 @@
+package com.aws.spring.ebook.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class VersionConflictException extends RuntimeException {
+    private final String ebookId;
+    private final Long expectedVersion;
+    private final Long currentVersion;
+
+    public VersionConflictException(String ebookId, Long expectedVersion, Long currentVersion) {
+        super(String.format("Ebook %s was modified concurrently: expected version %d but found %d",
+                ebookId, expectedVersion, currentVersion));
+        this.ebookId = ebookId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+}
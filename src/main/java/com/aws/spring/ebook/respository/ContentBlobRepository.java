@@ -0,0 +1,23 @@
+package com.aws.spring.ebook.respository;
+
+import com.aws.spring.ebook.entity.ContentBlob;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface ContentBlobRepository {
+    // Takes one more reference on a live blob; null when the hash is unknown or its last reference is already gone
+    ContentBlob acquire(String hash);
+
+    // Registers a new blob holding one reference; false when the hash is already registered
+    boolean register(ContentBlob blob);
+
+    // Drops one reference and returns how many remain
+    long release(String hash);
+
+    // Removes the index entry once no reference is left; false if it was re-referenced in the meantime
+    boolean deleteIfUnreferenced(String hash);
+
+    CompletableFuture<Long> releaseAsync(String hash);
+
+    CompletableFuture<Boolean> deleteIfUnreferencedAsync(String hash);
+}
@@ -1,17 +1,45 @@
 package com.aws.spring.ebook.respository;
 
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.EbookUpdate;
 import com.aws.spring.ebook.entity.Ebook;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EbookRepository {
     List<Ebook> getAllItems();
 
+    EbookPage getItems(int pageSize, String continuationToken);
+
     Ebook getItem(String ebookId);
 
+    // Query the author / genre GSIs, sorted by title
+    EbookPage getItemsByAuthor(String author, int pageSize, String continuationToken, boolean descending);
+
+    EbookPage getItemsByGenre(String genre, int pageSize, String continuationToken, boolean descending);
+
+    // Fails with EbookAlreadyExistsException when the id is taken
     void createItem(Ebook ebook);
 
-    void updateItem(Ebook ebook);
+    // Writes through BatchWriteItem and returns the ebooks that could not be written
+    List<Ebook> createItems(List<Ebook> ebooks);
+
+    // Changes only the non-null fields and returns the updated item; expectedVersion null skips the version check
+    Ebook updateItem(String ebookId, EbookUpdate update, Long expectedVersion);
+
+    // Returns the deleted item, or null when it did not exist (or a concurrent delete removed it first)
+    Ebook deleteItem(String ebookId);
+
+    // Non-blocking variants backed by the async DynamoDB client
+
+    CompletableFuture<EbookPage> getItemsAsync(int pageSize, String continuationToken);
+
+    CompletableFuture<Ebook> getItemAsync(String ebookId);
+
+    CompletableFuture<Void> createItemAsync(Ebook ebook);
+
+    CompletableFuture<Ebook> updateItemAsync(String ebookId, EbookUpdate update, Long expectedVersion);
 
-    void deleteItem(String ebookId);
+    CompletableFuture<Ebook> deleteItemAsync(String ebookId);
 }
@@ -0,0 +1,21 @@
+package com.aws.spring.ebook.respository;
+
+import com.aws.spring.ebook.entity.UploadSession;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository {
+    void createSession(UploadSession session);
+
+    UploadSession getSession(String sessionId);
+
+    // Adds one part without rewriting the others, so concurrent chunk uploads never lose each other's ETags; a last
+    // part also becomes the session's lastPartNumber. Fails with BadRequestException when the part lies beyond the
+    // recorded last part, or is a different last part
+    void recordPart(String sessionId, int partNumber, String eTag, boolean last);
+
+    void deleteSession(String sessionId);
+
+    List<UploadSession> getSessionsIdleSince(Instant cutoff);
+}
@@ -0,0 +1,183 @@
+package com.aws.spring.ebook.respository.impl;
+
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.EbookUpdate;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.respository.EbookRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@Repository
+@Primary
+public class CachingEbookRepository implements EbookRepository {
+
+    private final EbookRepository delegate;
+    // Async so a load and the writes racing it are ordered: a write replaces the in-flight future, whose late
+    // result is then discarded instead of overwriting the newer item
+    private final AsyncCache<String, Optional<Ebook>> cache;
+
+    public CachingEbookRepository(@Qualifier("ebookRepositoryImpl") EbookRepository delegate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${aws.dynamodb.cache.max-size:10000}") long maxSize,
+                                  @Value("${aws.dynamodb.cache.ttl:5m}") Duration ttl,
+                                  @Value("${aws.dynamodb.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.delegate = delegate;
+        // Caffeine evicts with W-TinyLFU once maxSize is reached; missing ids are cached for a shorter negativeTtl
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Optional<Ebook>>() {
+                    @Override
+                    public long expireAfterCreate(String ebookId, Optional<Ebook> ebook, long currentTime) {
+                        return (ebook.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String ebookId, Optional<Ebook> ebook, long currentTime, long currentDuration) {
+                        return expireAfterCreate(ebookId, ebook, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String ebookId, Optional<Ebook> ebook, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "ebookMetadata");
+    }
+
+    @Override
+    public List<Ebook> getAllItems() {
+        return delegate.getAllItems();
+    }
+
+    @Override
+    public EbookPage getItems(int pageSize, String continuationToken) {
+        return delegate.getItems(pageSize, continuationToken);
+    }
+
+    @Override
+    public Ebook getItem(String ebookId) {
+        Optional<Ebook> ebook = cache.synchronous().get(ebookId, id -> Optional.ofNullable(delegate.getItem(id)).map(this::copyOf));
+        // Callers mutate the returned Ebook (see updateEbook), so never hand out the cached instance
+        return ebook.map(this::copyOf).orElse(null);
+    }
+
+    @Override
+    public EbookPage getItemsByAuthor(String author, int pageSize, String continuationToken, boolean descending) {
+        return delegate.getItemsByAuthor(author, pageSize, continuationToken, descending);
+    }
+
+    @Override
+    public EbookPage getItemsByGenre(String genre, int pageSize, String continuationToken, boolean descending) {
+        return delegate.getItemsByGenre(genre, pageSize, continuationToken, descending);
+    }
+
+    @Override
+    public void createItem(Ebook ebook) {
+        delegate.createItem(ebook);
+        store(ebook);
+    }
+
+    @Override
+    public List<Ebook> createItems(List<Ebook> ebooks) {
+        List<Ebook> failed = delegate.createItems(ebooks);
+        // Bulk writes don't fill the cache, or one import would evict the hot items; only stale misses are dropped
+        cache.synchronous().invalidateAll(ebooks.stream().map(Ebook::getEbookId).toList());
+        return failed;
+    }
+
+    @Override
+    public Ebook updateItem(String ebookId, EbookUpdate update, Long expectedVersion) {
+        try {
+            Ebook updated = delegate.updateItem(ebookId, update, expectedVersion);
+            // ALL_NEW hands us the complete item, so the cache is refreshed without another read
+            store(updated);
+            return updated;
+        } catch (RuntimeException e) {
+            cache.synchronous().invalidate(ebookId);
+            throw e;
+        }
+    }
+
+    @Override
+    public Ebook deleteItem(String ebookId) {
+        try {
+            return delegate.deleteItem(ebookId);
+        } finally {
+            cache.synchronous().invalidate(ebookId);
+        }
+    }
+
+    @Override
+    public CompletableFuture<EbookPage> getItemsAsync(int pageSize, String continuationToken) {
+        return delegate.getItemsAsync(pageSize, continuationToken);
+    }
+
+    @Override
+    public CompletableFuture<Ebook> getItemAsync(String ebookId) {
+        // Concurrent misses share one GetItem; a failed load is dropped from the cache by Caffeine
+        return cache.get(ebookId, (id, executor) -> delegate.getItemAsync(id)
+                        .thenApply(ebook -> Optional.ofNullable(ebook).map(this::copyOf)))
+                .thenApply(ebook -> ebook.map(this::copyOf).orElse(null));
+    }
+
+    @Override
+    public CompletableFuture<Void> createItemAsync(Ebook ebook) {
+        Ebook cachedCopy = copyOf(ebook);
+        return delegate.createItemAsync(ebook)
+                .thenRun(() -> store(cachedCopy));
+    }
+
+    @Override
+    public CompletableFuture<Ebook> updateItemAsync(String ebookId, EbookUpdate update, Long expectedVersion) {
+        return delegate.updateItemAsync(ebookId, update, expectedVersion)
+                .whenComplete((updated, error) -> {
+                    if (error == null) {
+                        store(updated);
+                    } else {
+                        cache.synchronous().invalidate(ebookId);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Ebook> deleteItemAsync(String ebookId) {
+        return delegate.deleteItemAsync(ebookId)
+                .whenComplete((result, error) -> cache.synchronous().invalidate(ebookId));
+    }
+
+    // Replaces whatever is cached, including a load still in flight, unless a concurrent write already cached a
+    // newer version of the item
+    private void store(Ebook ebook) {
+        Ebook cachedCopy = copyOf(ebook);
+        cache.asMap().compute(cachedCopy.getEbookId(), (ebookId, existing) -> isNewer(existing, cachedCopy)
+                ? existing : CompletableFuture.completedFuture(Optional.of(cachedCopy)));
+    }
+
+    private boolean isNewer(CompletableFuture<Optional<Ebook>> existing, Ebook candidate) {
+        if (existing == null || !existing.isDone() || existing.isCompletedExceptionally()) {
+            return false;
+        }
+        Optional<Ebook> current = existing.join();
+        return current.isPresent() && current.get().getVersion() != null && candidate.getVersion() != null
+                && current.get().getVersion() > candidate.getVersion();
+    }
+
+    private Ebook copyOf(Ebook ebook) {
+        return new Ebook(ebook.getEbookId(), ebook.getTitle(), ebook.getAuthor(), ebook.getGenre(), ebook.getUrl(),
+                ebook.getVersion(), ebook.getContentHash());
+    }
+}
@@ -0,0 +1,151 @@
+package com.aws.spring.ebook.respository.impl;
+
+import com.aws.spring.ebook.entity.ContentBlob;
+import com.aws.spring.ebook.respository.ContentBlobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+@Repository
+@RequiredArgsConstructor
+public class ContentBlobRepositoryImpl implements ContentBlobRepository {
+
+    private static final AttributeValue ZERO = AttributeValue.builder().n("0").build();
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Value("${aws.dynamodb.content-hash-table-name:ebook-content-hashes}")
+    private String tableName;
+
+    @Override
+    public ContentBlob acquire(String hash) {
+        try {
+            UpdateItemResponse response = dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(key(hash))
+                    .updateExpression("ADD referenceCount :delta")
+                    // A blob at zero references is about to be deleted and must not be revived
+                    .conditionExpression("referenceCount > :zero")
+                    .expressionAttributeValues(Map.of(
+                            ":delta", AttributeValue.builder().n("1").build(),
+                            ":zero", ZERO))
+                    .returnValues(ReturnValue.ALL_NEW)
+                    .build());
+            return toBlob(response.attributes());
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean register(ContentBlob blob) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.builder().s(blob.getHash()).build());
+        item.put("objectKey", AttributeValue.builder().s(blob.getKey()).build());
+        item.put("objectUrl", AttributeValue.builder().s(blob.getUrl()).build());
+        item.put("contentLength", AttributeValue.builder().n(String.valueOf(blob.getContentLength())).build());
+        item.put("referenceCount", AttributeValue.builder().n(String.valueOf(blob.getReferenceCount())).build());
+        item.put("createdAt", AttributeValue.builder().n(String.valueOf(blob.getCreatedAt())).build());
+        if (blob.getETag() != null) {
+            item.put("eTag", AttributeValue.builder().s(blob.getETag()).build());
+        }
+
+        try {
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(item)
+                    .conditionExpression("attribute_not_exists(id)")
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long release(String hash) {
+        return remaining(dynamoDbClient.updateItem(releaseRequest(hash)));
+    }
+
+    @Override
+    public CompletableFuture<Long> releaseAsync(String hash) {
+        return dynamoDbAsyncClient.updateItem(releaseRequest(hash)).thenApply(this::remaining);
+    }
+
+    @Override
+    public boolean deleteIfUnreferenced(String hash) {
+        try {
+            dynamoDbClient.deleteItem(deleteRequest(hash));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIfUnreferencedAsync(String hash) {
+        return dynamoDbAsyncClient.deleteItem(deleteRequest(hash)).handle((response, error) -> {
+            if (error == null) {
+                return true;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof ConditionalCheckFailedException) {
+                return false;
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
+
+    private UpdateItemRequest releaseRequest(String hash) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(key(hash))
+                .updateExpression("ADD referenceCount :delta")
+                .conditionExpression("referenceCount > :zero")
+                .expressionAttributeValues(Map.of(
+                        ":delta", AttributeValue.builder().n("-1").build(),
+                        ":zero", ZERO))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .build();
+    }
+
+    private DeleteItemRequest deleteRequest(String hash) {
+        return DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(key(hash))
+                .conditionExpression("referenceCount = :zero")
+                .expressionAttributeValues(Map.of(":zero", ZERO))
+                .build();
+    }
+
+    private long remaining(UpdateItemResponse response) {
+        return Long.parseLong(response.attributes().get("referenceCount").n());
+    }
+
+    private Map<String, AttributeValue> key(String hash) {
+        return Map.of("id", AttributeValue.builder().s(hash).build());
+    }
+
+    private ContentBlob toBlob(Map<String, AttributeValue> item) {
+        AttributeValue eTag = item.get("eTag");
+
+        return new ContentBlob(
+                item.get("id").s(),
+                item.get("objectKey").s(),
+                item.get("objectUrl").s(),
+                Long.parseLong(item.get("contentLength").n()),
+                eTag == null ? null : eTag.s(),
+                Long.parseLong(item.get("referenceCount").n()),
+                Long.parseLong(item.get("createdAt").n())
+        );
+    }
+}
@@ -1,125 +1,451 @@
 package com.aws.spring.ebook.respository.impl;
 
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.EbookUpdate;
 import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.exception.EBookNotFoundException;
+import com.aws.spring.ebook.exception.EbookAlreadyExistsException;
+import com.aws.spring.ebook.exception.VersionConflictException;
 import com.aws.spring.ebook.respository.EbookRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.annotation.Observed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 @Repository
+@Slf4j
+@Observed(name = "ebook.repository")
 public class EbookRepositoryImpl implements EbookRepository {
 
+    // BatchWriteItem accepts at most 25 put or delete requests
+    private static final int MAX_BATCH_WRITE = 25;
+
+    private static final TypeReference<Map<String, String>> TOKEN_TYPE = new TypeReference<>() {
+    };
+
     private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final ExecutorService dynamoScanExecutor;
+    private final ObjectMapper objectMapper;
 
     @Value("${aws.dynamodb.table-name}")
     private String tableName;
 
-    public EbookRepositoryImpl(DynamoDbClient dynamoDbClient) {
+    @Value("${aws.dynamodb.scan.segments:4}")
+    private int scanSegments;
+
+    @Value("${aws.dynamodb.scan.max-page-size:1000}")
+    private int maxPageSize;
+
+    @Value("${aws.dynamodb.author-index-name:author-title-index}")
+    private String authorIndexName;
+
+    @Value("${aws.dynamodb.genre-index-name:genre-title-index}")
+    private String genreIndexName;
+
+    @Value("${aws.dynamodb.batch-write.max-attempts:5}")
+    private int batchWriteMaxAttempts;
+
+    public EbookRepositoryImpl(DynamoDbClient dynamoDbClient,
+                               DynamoDbAsyncClient dynamoDbAsyncClient,
+                               @Qualifier("dynamoScanExecutor") ExecutorService dynamoScanExecutor,
+                               ObjectMapper objectMapper) {
         this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.dynamoScanExecutor = dynamoScanExecutor;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     public List<Ebook> getAllItems() {
-        // Scan the entire DynamoDB table to retrieve all ebooks
-        ScanRequest scanRequest = ScanRequest.builder()
-                .tableName(tableName)
-                .build();
+        // Parallel scan: every segment pages through its slice of the table until LastEvaluatedKey runs out
+        List<CompletableFuture<List<Ebook>>> segments = new ArrayList<>(scanSegments);
+        for (int segment = 0; segment < scanSegments; segment++) {
+            ScanRequest scanRequest = ScanRequest.builder()
+                    .tableName(tableName)
+                    .segment(segment)
+                    .totalSegments(scanSegments)
+                    .build();
 
-        ScanResponse scanResponse = dynamoDbClient.scan(scanRequest);
-
-        // Convert the scan result into a list of Ebook objects
-        return scanResponse.items().stream()
-                .map(item -> new Ebook(
-                        item.get("id").s(),
-                        item.get("title").s(),
-                        item.get("author").s(),
-                        item.get("genre").s(),
-                        item.get("pdfUrl").s()
-                ))
-                .collect(Collectors.toList());
+            segments.add(CompletableFuture.supplyAsync(() -> dynamoDbClient.scanPaginator(scanRequest).items().stream()
+                    .map(this::toEbook)
+                    .collect(Collectors.toList()), dynamoScanExecutor));
+        }
+
+        try {
+            return segments.stream()
+                    .flatMap(segment -> segment.join().stream())
+                    .collect(Collectors.toList());
+        } catch (CompletionException e) {
+            segments.forEach(segment -> segment.cancel(true));
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public EbookPage getItems(int pageSize, String continuationToken) {
+        return toPage(dynamoDbClient.scan(pageRequest(pageSize, continuationToken)));
+    }
+
+    @Override
+    public CompletableFuture<EbookPage> getItemsAsync(int pageSize, String continuationToken) {
+        return dynamoDbAsyncClient.scan(pageRequest(pageSize, continuationToken)).thenApply(this::toPage);
     }
 
     @Override
     public Ebook getItem(String ebookId) {
-        Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(ebookId).build());
+        return toEbook(dynamoDbClient.getItem(getItemRequest(ebookId)));
+    }
 
-        GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
-                .tableName(tableName)
-                .key(key)
-                .build());
+    @Override
+    public CompletableFuture<Ebook> getItemAsync(String ebookId) {
+        return dynamoDbAsyncClient.getItem(getItemRequest(ebookId)).thenApply(this::toEbook);
+    }
 
-        if (!response.hasItem()) {
-            return null;
-        }
+    @Override
+    public EbookPage getItemsByAuthor(String author, int pageSize, String continuationToken, boolean descending) {
+        return toPage(dynamoDbClient.query(indexQueryRequest(authorIndexName, "author", author, pageSize, continuationToken, descending)));
+    }
 
-        Map<String, AttributeValue> item = response.item();
-        return new Ebook(
-                item.get("id").s(),
-                item.get("title").s(),
-                item.get("author").s(),
-                item.get("genre").s(),
-                item.get("pdfUrl").s()
-        );
+    @Override
+    public EbookPage getItemsByGenre(String genre, int pageSize, String continuationToken, boolean descending) {
+        return toPage(dynamoDbClient.query(indexQueryRequest(genreIndexName, "genre", genre, pageSize, continuationToken, descending)));
     }
 
     @Override
     public void createItem(Ebook ebook) {
-        Map<String, AttributeValue> item = Map.of(
-                "id", AttributeValue.builder().s(ebook.getEbookId()).build(),
-                "title", AttributeValue.builder().s(ebook.getTitle()).build(),
-                "author", AttributeValue.builder().s(ebook.getAuthor()).build(),
-                "genre", AttributeValue.builder().s(ebook.getGenre()).build(),
-                "pdfUrl", AttributeValue.builder().s(ebook.getUrl()).build()
-        );
+        try {
+            dynamoDbClient.putItem(putItemRequest(ebook));
+        } catch (ConditionalCheckFailedException e) {
+            throw new EbookAlreadyExistsException(ebook.getEbookId());
+        }
+    }
 
-        dynamoDbClient.putItem(PutItemRequest.builder()
-                .tableName(tableName)
-                .item(item)
-                .build());
+    @Override
+    public List<Ebook> createItems(List<Ebook> ebooks) {
+        List<Ebook> failed = new ArrayList<>();
+        for (int from = 0; from < ebooks.size(); from += MAX_BATCH_WRITE) {
+            List<Ebook> batch = ebooks.subList(from, Math.min(from + MAX_BATCH_WRITE, ebooks.size()));
+            Set<String> unprocessedIds = batchWrite(batch);
+            batch.stream()
+                    .filter(ebook -> unprocessedIds.contains(ebook.getEbookId()))
+                    .forEach(failed::add);
+        }
+        return failed;
+    }
+
+    private Set<String> batchWrite(List<Ebook> batch) {
+        List<WriteRequest> writeRequests = batch.stream()
+                .map(ebook -> WriteRequest.builder()
+                        .putRequest(PutRequest.builder().item(itemOf(ebook)).build())
+                        .build())
+                .toList();
+        Map<String, List<WriteRequest>> requestItems = Map.of(tableName, writeRequests);
+
+        // Throttled items come back as UnprocessedItems and are resent with exponential backoff
+        for (int attempt = 1; ; attempt++) {
+            BatchWriteItemResponse response;
+            try {
+                response = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                        .requestItems(requestItems)
+                        .build());
+            } catch (ProvisionedThroughputExceededException | RequestLimitExceededException e) {
+                response = null;
+            } catch (DynamoDbException e) {
+                // Anything but throttling fails the same way again, so report the whole batch as not written
+                log.error("BatchWriteItem failed for {} ebooks", batch.size(), e);
+                return batch.stream().map(Ebook::getEbookId).collect(Collectors.toSet());
+            }
+
+            requestItems = response == null ? requestItems : response.unprocessedItems();
+            if (requestItems.isEmpty() || attempt >= batchWriteMaxAttempts) {
+                break;
+            }
+            backoff(attempt);
+        }
+
+        return requestItems.getOrDefault(tableName, List.of()).stream()
+                .map(writeRequest -> writeRequest.putRequest().item().get("id").s())
+                .collect(Collectors.toSet());
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(Math.min(50L << attempt, 2000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying BatchWriteItem", e);
+        }
     }
 
     @Override
-    public void updateItem(Ebook ebook) {
-        Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(ebook.getEbookId()).build());
-
-        Map<String, AttributeValueUpdate> updates = Map.of(
-                "title", AttributeValueUpdate.builder()
-                        .value(AttributeValue.builder().s(ebook.getTitle()).build())
-                        .action(AttributeAction.PUT)
-                        .build(),
-                "author", AttributeValueUpdate.builder()
-                        .value(AttributeValue.builder().s(ebook.getAuthor()).build())
-                        .action(AttributeAction.PUT)
-                        .build(),
-                "genre", AttributeValueUpdate.builder()
-                        .value(AttributeValue.builder().s(ebook.getGenre()).build())
-                        .action(AttributeAction.PUT)
-                        .build(),
-                "pdfUrl", AttributeValueUpdate.builder()
-                        .value(AttributeValue.builder().s(ebook.getUrl()).build())
-                        .action(AttributeAction.PUT)
-                        .build()
-        );
+    public CompletableFuture<Void> createItemAsync(Ebook ebook) {
+        return dynamoDbAsyncClient.putItem(putItemRequest(ebook))
+                .handle((response, error) -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof ConditionalCheckFailedException) {
+                        throw new EbookAlreadyExistsException(ebook.getEbookId());
+                    }
+                    if (cause != null) {
+                        throw new CompletionException(cause);
+                    }
+                    return null;
+                });
+    }
 
-        dynamoDbClient.updateItem(UpdateItemRequest.builder()
-                .tableName(tableName)
-                .key(key)
-                .attributeUpdates(updates)
-                .build());
+    @Override
+    public Ebook updateItem(String ebookId, EbookUpdate update, Long expectedVersion) {
+        try {
+            return toEbook(dynamoDbClient.updateItem(updateItemRequest(ebookId, update, expectedVersion)).attributes());
+        } catch (ConditionalCheckFailedException e) {
+            throw updateConflict(ebookId, expectedVersion, getItem(ebookId));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Ebook> updateItemAsync(String ebookId, EbookUpdate update, Long expectedVersion) {
+        return dynamoDbAsyncClient.updateItem(updateItemRequest(ebookId, update, expectedVersion))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(toEbook(response.attributes()));
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof ConditionalCheckFailedException) {
+                        return getItemAsync(ebookId).<Ebook>thenApply(current -> {
+                            throw updateConflict(ebookId, expectedVersion, current);
+                        });
+                    }
+                    return CompletableFuture.<Ebook>failedFuture(cause);
+                })
+                .thenCompose(result -> result);
+    }
+
+    @Override
+    public Ebook deleteItem(String ebookId) {
+        return toEbook(dynamoDbClient.deleteItem(deleteItemRequest(ebookId)));
     }
 
     @Override
-    public void deleteItem(String ebookId) {
-        Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(ebookId).build());
+    public CompletableFuture<Ebook> deleteItemAsync(String ebookId) {
+        return dynamoDbAsyncClient.deleteItem(deleteItemRequest(ebookId)).thenApply(this::toEbook);
+    }
+
+    // Request builders shared by the blocking and the async client
+
+    private ScanRequest pageRequest(int pageSize, String continuationToken) {
+        if (pageSize < 1) {
+            throw new BadRequestException("pageSize must be at least 1");
+        }
 
-        dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+        return ScanRequest.builder()
                 .tableName(tableName)
-                .key(key)
-                .build());
+                .limit(Math.min(pageSize, maxPageSize))
+                .exclusiveStartKey(decodeToken(continuationToken))
+                .build();
+    }
+
+    private QueryRequest indexQueryRequest(String indexName, String attribute, String value, int pageSize,
+                                           String continuationToken, boolean descending) {
+        if (pageSize < 1) {
+            throw new BadRequestException("pageSize must be at least 1");
+        }
+
+        // The index sort key is title, so DynamoDB returns each page already ordered by title
+        return QueryRequest.builder()
+                .tableName(tableName)
+                .indexName(indexName)
+                .keyConditionExpression("#attr = :value")
+                .expressionAttributeNames(Map.of("#attr", attribute))
+                .expressionAttributeValues(Map.of(":value", AttributeValue.builder().s(value).build()))
+                .scanIndexForward(!descending)
+                .limit(Math.min(pageSize, maxPageSize))
+                .exclusiveStartKey(decodeToken(continuationToken))
+                .build();
+    }
+
+    private GetItemRequest getItemRequest(String ebookId) {
+        return GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("id", AttributeValue.builder().s(ebookId).build()))
+                .build();
+    }
+
+    // Creates never replace: ids chosen by clients (direct upload completion) must not overwrite an existing eBook
+    private PutItemRequest putItemRequest(Ebook ebook) {
+        return PutItemRequest.builder()
+                .tableName(tableName)
+                .item(itemOf(ebook))
+                .conditionExpression("attribute_not_exists(id)")
+                .build();
+    }
+
+    private Map<String, AttributeValue> itemOf(Ebook ebook) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.builder().s(ebook.getEbookId()).build());
+        item.put("title", AttributeValue.builder().s(ebook.getTitle()).build());
+        item.put("author", AttributeValue.builder().s(ebook.getAuthor()).build());
+        item.put("genre", AttributeValue.builder().s(ebook.getGenre()).build());
+        item.put("pdfUrl", AttributeValue.builder().s(ebook.getUrl()).build());
+        item.put("version", AttributeValue.builder().n(ebook.getVersion() != null ? ebook.getVersion().toString() : "1").build());
+        if (ebook.getContentHash() != null) {
+            item.put("contentHash", AttributeValue.builder().s(ebook.getContentHash()).build());
+        }
+        return item;
+    }
+
+    private UpdateItemRequest updateItemRequest(String ebookId, EbookUpdate update, Long expectedVersion) {
+        List<String> assignments = new ArrayList<>();
+        Map<String, String> names = new LinkedHashMap<>();
+        Map<String, AttributeValue> values = new LinkedHashMap<>();
+        addAssignment(assignments, names, values, "title", update.getTitle());
+        addAssignment(assignments, names, values, "author", update.getAuthor());
+        addAssignment(assignments, names, values, "genre", update.getGenre());
+        addAssignment(assignments, names, values, "pdfUrl", update.getUrl());
+        addAssignment(assignments, names, values, "contentHash", update.getContentHash());
+
+        // Items written before versioning have no version attribute and count as version 0
+        names.put("#version", "version");
+        values.put(":zero", AttributeValue.builder().n("0").build());
+        values.put(":one", AttributeValue.builder().n("1").build());
+        assignments.add("#version = if_not_exists(#version, :zero) + :one");
+
+        // Without the existence check an update of an unknown id would silently create a partial item
+        String condition = "attribute_exists(id)";
+        if (expectedVersion != null) {
+            values.put(":expected", AttributeValue.builder().n(expectedVersion.toString()).build());
+            condition += expectedVersion == 0
+                    ? " AND (attribute_not_exists(#version) OR #version = :expected)"
+                    : " AND #version = :expected";
+        }
+
+        String expression = "SET " + String.join(", ", assignments);
+        if (update.getUrl() != null && update.getContentHash() == null) {
+            // The replacement file is not a shared blob, so the hash of the old one must not linger
+            names.put("#contentHash", "contentHash");
+            expression += " REMOVE #contentHash";
+        }
+
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("id", AttributeValue.builder().s(ebookId).build()))
+                .updateExpression(expression)
+                .conditionExpression(condition)
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build();
+    }
+
+    private void addAssignment(List<String> assignments, Map<String, String> names, Map<String, AttributeValue> values,
+                               String attribute, String value) {
+        if (value == null) {
+            return;
+        }
+        names.put("#" + attribute, attribute);
+        values.put(":" + attribute, AttributeValue.builder().s(value).build());
+        assignments.add("#" + attribute + " = :" + attribute);
+    }
+
+    // The condition only fails for a missing item or a stale version; one read tells which
+    private RuntimeException updateConflict(String ebookId, Long expectedVersion, Ebook current) {
+        if (current == null) {
+            return new EBookNotFoundException("Ebook", "ebookId", ebookId);
+        }
+        return new VersionConflictException(ebookId, expectedVersion, current.getVersion());
+    }
+
+    private DeleteItemRequest deleteItemRequest(String ebookId) {
+        return DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("id", AttributeValue.builder().s(ebookId).build()))
+                // Only the caller whose delete removed the item gets it back, so its file is released exactly once
+                .returnValues(ReturnValue.ALL_OLD)
+                .build();
+    }
+
+    private EbookPage toPage(ScanResponse scanResponse) {
+        return toPage(scanResponse.items(), scanResponse.lastEvaluatedKey());
+    }
+
+    private EbookPage toPage(QueryResponse queryResponse) {
+        return toPage(queryResponse.items(), queryResponse.lastEvaluatedKey());
+    }
+
+    private EbookPage toPage(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+        List<Ebook> ebooks = items.stream()
+                .map(this::toEbook)
+                .collect(Collectors.toList());
+        return new EbookPage(ebooks, encodeToken(lastEvaluatedKey));
+    }
+
+    private Ebook toEbook(GetItemResponse response) {
+        return response.hasItem() ? toEbook(response.item()) : null;
+    }
+
+    private Ebook toEbook(DeleteItemResponse response) {
+        return response.hasAttributes() && !response.attributes().isEmpty() ? toEbook(response.attributes()) : null;
+    }
+
+    private Ebook toEbook(Map<String, AttributeValue> item) {
+        return new Ebook(
+                item.get("id").s(),
+                item.get("title").s(),
+                item.get("author").s(),
+                item.get("genre").s(),
+                item.get("pdfUrl").s(),
+                item.containsKey("version") ? Long.valueOf(item.get("version").n()) : 0L,
+                item.containsKey("contentHash") ? item.get("contentHash").s() : null
+        );
+    }
+
+    // LastEvaluatedKey only holds string key attributes, so it round-trips as a base64url-encoded JSON map
+    private String encodeToken(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+
+        Map<String, String> key = new LinkedHashMap<>();
+        lastEvaluatedKey.forEach((name, value) -> key.put(name, value.s()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(key));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error encoding continuation token", e);
+        }
+    }
+
+    private Map<String, AttributeValue> decodeToken(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            Map<String, String> key = objectMapper.readValue(json, TOKEN_TYPE);
+            return key.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> AttributeValue.builder().s(entry.getValue()).build()));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new BadRequestException("Invalid continuation token", e);
+        }
     }
 }
@@ -0,0 +1,139 @@
+package com.aws.spring.ebook.respository.impl;
+
+import com.aws.spring.ebook.entity.UploadSession;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.exception.EBookNotFoundException;
+import com.aws.spring.ebook.respository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class UploadSessionRepositoryImpl implements UploadSessionRepository {
+
+    private final DynamoDbClient dynamoDbClient;
+
+    @Value("${aws.dynamodb.upload-session-table-name:ebook-upload-sessions}")
+    private String tableName;
+
+    @Override
+    public void createSession(UploadSession session) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.builder().s(session.getSessionId()).build());
+        item.put("objectKey", AttributeValue.builder().s(session.getKey()).build());
+        item.put("uploadId", AttributeValue.builder().s(session.getUploadId()).build());
+        item.put("fileName", AttributeValue.builder().s(session.getFileName()).build());
+        item.put("title", AttributeValue.builder().s(session.getTitle()).build());
+        item.put("author", AttributeValue.builder().s(session.getAuthor()).build());
+        item.put("genre", AttributeValue.builder().s(session.getGenre()).build());
+        item.put("partSize", AttributeValue.builder().n(String.valueOf(session.getPartSize())).build());
+        // An empty map up front lets recordPart address parts.#n directly
+        item.put("parts", AttributeValue.builder().m(Map.of()).build());
+        item.put("createdAt", AttributeValue.builder().n(String.valueOf(session.getCreatedAt())).build());
+        item.put("updatedAt", AttributeValue.builder().n(String.valueOf(session.getUpdatedAt())).build());
+        if (session.getContentType() != null) {
+            item.put("contentType", AttributeValue.builder().s(session.getContentType()).build());
+        }
+
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .build());
+    }
+
+    @Override
+    public UploadSession getSession(String sessionId) {
+        GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(key(sessionId))
+                // Part ETags are written by other nodes, so a stale read could hide a finished part
+                .consistentRead(true)
+                .build());
+        return response.hasItem() ? toSession(response.item()) : null;
+    }
+
+    @Override
+    public void recordPart(String sessionId, int partNumber, String eTag, boolean last) {
+        // Checked in the write itself, so two racing chunks can't both claim to be the last one
+        String lastPartCondition = last ? "(attribute_not_exists(lastPart) OR lastPart = :part)"
+                : "(attribute_not_exists(lastPart) OR lastPart > :part)";
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(key(sessionId))
+                    .updateExpression("SET parts.#part = :eTag, updatedAt = :now" + (last ? ", lastPart = :part" : ""))
+                    .conditionExpression("attribute_exists(id) AND " + lastPartCondition)
+                    .expressionAttributeNames(Map.of("#part", String.valueOf(partNumber)))
+                    .expressionAttributeValues(Map.of(
+                            ":eTag", AttributeValue.builder().s(eTag).build(),
+                            ":part", AttributeValue.builder().n(String.valueOf(partNumber)).build(),
+                            ":now", AttributeValue.builder().n(String.valueOf(System.currentTimeMillis())).build()))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            UploadSession session = getSession(sessionId);
+            if (session == null) {
+                // The session was completed, aborted or swept while the chunk was in flight
+                throw new EBookNotFoundException("Upload session", "sessionId", sessionId);
+            }
+            throw new BadRequestException("Chunk " + session.getLastPartNumber() + " was already sent as the final chunk");
+        }
+    }
+
+    @Override
+    public void deleteSession(String sessionId) {
+        dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(key(sessionId))
+                .build());
+    }
+
+    @Override
+    public List<UploadSession> getSessionsIdleSince(Instant cutoff) {
+        // Sessions are short-lived and few, so a filtered scan is cheap enough for the sweeper
+        ScanRequest request = ScanRequest.builder()
+                .tableName(tableName)
+                .filterExpression("updatedAt < :cutoff")
+                .expressionAttributeValues(Map.of(":cutoff", AttributeValue.builder().n(String.valueOf(cutoff.toEpochMilli())).build()))
+                .build();
+
+        return dynamoDbClient.scanPaginator(request).items().stream()
+                .map(this::toSession)
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, AttributeValue> key(String sessionId) {
+        return Map.of("id", AttributeValue.builder().s(sessionId).build());
+    }
+
+    private UploadSession toSession(Map<String, AttributeValue> item) {
+        Map<Integer, String> parts = item.get("parts").m().entrySet().stream()
+                .collect(Collectors.toMap(entry -> Integer.parseInt(entry.getKey()), entry -> entry.getValue().s()));
+        AttributeValue contentType = item.get("contentType");
+        AttributeValue lastPart = item.get("lastPart");
+
+        return new UploadSession(
+                item.get("id").s(),
+                item.get("objectKey").s(),
+                item.get("uploadId").s(),
+                item.get("fileName").s(),
+                contentType == null ? null : contentType.s(),
+                item.get("title").s(),
+                item.get("author").s(),
+                item.get("genre").s(),
+                Long.parseLong(item.get("partSize").n()),
+                parts,
+                lastPart == null ? null : Integer.valueOf(lastPart.n()),
+                Long.parseLong(item.get("createdAt").n()),
+                Long.parseLong(item.get("updatedAt").n())
+        );
+    }
+}
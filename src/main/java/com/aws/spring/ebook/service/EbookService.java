@@ -1,24 +1,78 @@
 package com.aws.spring.ebook.service;
 
+import com.aws.spring.ebook.dto.BulkImportItem;
+import com.aws.spring.ebook.dto.BulkImportResult;
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.DirectUploadCompletion;
+import com.aws.spring.ebook.dto.DirectUploadRequest;
+import com.aws.spring.ebook.dto.DirectUploadTicket;
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
 import com.aws.spring.ebook.entity.Ebook;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EbookService {
 
     List<Ebook> getAllEbooks();
 
+    EbookPage getEbooks(int pageSize, String nextToken);
+
     Ebook getEbook(String ebookId);
 
-    Ebook createEbook(MultipartFile file, String title, String author, String genre) throws IOException;
+    EbookPage getEbooksByAuthor(String author, int pageSize, String nextToken, boolean descending);
+
+    EbookPage getEbooksByGenre(String genre, int pageSize, String nextToken, boolean descending);
+
+    // sha256 is optional; when given, identical content already stored is reused without uploading it to S3
+    Ebook createEbook(MultipartFile file, String title, String author, String genre, String sha256) throws IOException;
+
+    String reserveEbookId();
+
+    S3ObjectDetails uploadEbookFile(String ebookId, InputStream content, String fileName, String contentType,
+                                    String sha256) throws IOException;
 
-    Ebook updateEbook(String ebookId, String title, String author, String genre, MultipartFile newFile) throws IOException;
+    Ebook createEbook(String ebookId, S3ObjectDetails uploadedFile, String title, String author, String genre);
+
+    DirectUploadTicket startDirectUpload(DirectUploadRequest request);
+
+    Ebook completeDirectUpload(String ebookId, DirectUploadCompletion completion);
+
+    List<BulkImportResult> importEbooks(List<MultipartFile> files, List<BulkImportItem> manifest);
+
+    Ebook updateEbook(String ebookId, String title, String author, String genre, MultipartFile newFile,
+                      String sha256, Long expectedVersion) throws IOException;
 
     boolean deleteEbook(String ebookId);
 
     byte[] downloadEbook(String ebookId) throws IOException;
 
+    ResponseInputStream<GetObjectResponse> streamEbook(String ebookId);
+
+    ResponseInputStream<GetObjectResponse> streamEbook(String ebookId, S3DownloadOptions options);
+
     String getObjectName(String ebookId);
+
+    CachedS3Object getCachedEbookFile(String ebookId, boolean fillOnMiss);
+
+    S3ObjectDetails getEbookFileDetails(String ebookId);
+
+    String getDownloadUrl(String ebookId);
+
+    // Non-blocking variants, completed on the AWS SDK async threads
+
+    CompletableFuture<EbookPage> getEbooksAsync(int pageSize, String nextToken);
+
+    CompletableFuture<Ebook> getEbookAsync(String ebookId);
+
+    CompletableFuture<Void> deleteEbookAsync(String ebookId);
+
+    CompletableFuture<ResponseInputStream<GetObjectResponse>> streamEbookAsync(String ebookId, S3DownloadOptions options);
 }
@@ -0,0 +1,24 @@
+package com.aws.spring.ebook.service;
+
+import com.aws.spring.ebook.dto.ResumableUploadRequest;
+import com.aws.spring.ebook.dto.ResumableUploadStatus;
+import com.aws.spring.ebook.entity.Ebook;
+
+import java.io.InputStream;
+
+public interface ResumableUploadService {
+
+    ResumableUploadStatus createSession(ResumableUploadRequest request);
+
+    // Every chunk must be exactly the session's partSize, except the one sent with last set
+    ResumableUploadStatus uploadChunk(String sessionId, int partNumber, InputStream content, long contentLength, boolean last);
+
+    ResumableUploadStatus getStatus(String sessionId);
+
+    Ebook completeSession(String sessionId);
+
+    void abortSession(String sessionId);
+
+    // Aborts sessions nobody has touched within the session TTL; returns how many were removed
+    int sweepAbandonedSessions();
+}
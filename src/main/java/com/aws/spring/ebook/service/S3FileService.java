@@ -1,23 +1,80 @@
 package com.aws.spring.ebook.service;
 
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
 import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.dto.S3ObjectSummary;
+import com.aws.spring.ebook.dto.UploadedPart;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface S3FileService {
 
     List<String> listAllObjectsFromS3(String bucketName);
 
-    InputStream downloadFileFromS3(String bucketName, String key);
+    // Hands every object (and common prefix) to the consumer page by page; maxKeys null means no cap
+    void listObjectsFromS3(String bucketName, String prefix, String delimiter, Integer maxKeys,
+                           Consumer<S3ObjectSummary> consumer);
+
+    ResponseInputStream<GetObjectResponse> downloadFileFromS3(String bucketName, String key);
+
+    ResponseInputStream<GetObjectResponse> downloadFileFromS3(String bucketName, String key, S3DownloadOptions options);
+
+    // Whole object fetched as concurrent byte ranges and read back in order; for large internal transfers
+    InputStream downloadFileFromS3Parallel(String bucketName, String key) throws IOException;
+
+    // Local copy of the object from the disk cache; null when it can't be served locally, in which case fillOnMiss
+    // may start copying it into the cache in the background
+    CachedS3Object getCachedFile(String bucketName, String key, boolean fillOnMiss);
 
     S3ObjectDetails uploadFileToS3(String bucketName, MultipartFile file, String ebookId) throws IOException;
 
+    S3ObjectDetails uploadStreamToS3(String bucketName, InputStream content, String fileName, String contentType,
+                                     String ebookId) throws IOException;
+
     void deleteFileFromS3(String bucketName, String key);
 
     void deleteAllObjectsFromS3(String bucketName);
 
     String generatePresignedUrl(String bucketName, String key, int expirationInMinutes);
+
+    // Direct-to-S3 uploads: the client sends the bytes to presigned URLs, we only start and finish the upload
+
+    String generatePresignedUploadUrl(String bucketName, String key, String contentType, Duration validity);
+
+    String startMultipartUpload(String bucketName, String key, String contentType);
+
+    String generatePresignedPartUrl(String bucketName, String key, String uploadId, int partNumber, Duration validity);
+
+    UploadedPart uploadPart(String bucketName, String key, String uploadId, int partNumber, InputStream content,
+                            long contentLength);
+
+    void completeMultipartUpload(String bucketName, String key, String uploadId, List<UploadedPart> parts);
+
+    void abortMultipartUpload(String bucketName, String key, String uploadId);
+
+    // HEAD of an existing object; fails with NoSuchKeyException (404) when it is missing
+    S3ObjectDetails getObjectDetails(String bucketName, String key);
+
+    // Presigned GET that downloads the object as an attachment named fileName
+    String generatePresignedDownloadUrl(String bucketName, String key, String fileName);
+
+    // Non-blocking variants backed by the async S3 client
+
+    CompletableFuture<List<String>> listAllObjectsFromS3Async(String bucketName);
+
+    CompletableFuture<ResponseInputStream<GetObjectResponse>> downloadFileFromS3Async(String bucketName, String key,
+                                                                                     S3DownloadOptions options);
+
+    CompletableFuture<S3ObjectDetails> uploadFileToS3Async(String bucketName, MultipartFile file, String ebookId);
+
+    CompletableFuture<Void> deleteFileFromS3Async(String bucketName, String key);
 }
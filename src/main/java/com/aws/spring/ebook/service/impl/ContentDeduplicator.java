@@ -0,0 +1,175 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.entity.ContentBlob;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.respository.ContentBlobRepository;
+import com.aws.spring.ebook.service.S3FileService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+// Stores each distinct file once: eBooks with identical bytes share one S3 object, counted in the content-hash table
+@Component
+@Slf4j
+public class ContentDeduplicator {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    private final S3FileService s3FileService;
+    private final ContentBlobRepository contentBlobRepository;
+    private final Counter deduplicatedCounter;
+    private final Counter bytesSavedCounter;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    public ContentDeduplicator(S3FileService s3FileService,
+                               ContentBlobRepository contentBlobRepository,
+                               MeterRegistry meterRegistry) {
+        this.s3FileService = s3FileService;
+        this.contentBlobRepository = contentBlobRepository;
+        this.deduplicatedCounter = Counter.builder("ebook.content.deduplicated")
+                .description("Uploads that reused an existing S3 object")
+                .register(meterRegistry);
+        this.bytesSavedCounter = Counter.builder("ebook.content.bytes-saved")
+                .description("Bytes not stored thanks to deduplication")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // keyPrefix must be unique per call, so the staged object never overwrites a blob other eBooks share
+    public S3ObjectDetails store(String keyPrefix, InputStream content, String fileName, String contentType,
+                                 String expectedSha256) throws IOException {
+        String expected = normalize(expectedSha256);
+        MessageDigest digest = sha256();
+        DigestInputStream hashingContent = new DigestInputStream(content, digest);
+
+        if (expected != null) {
+            // A known hash skips the S3 upload; the bytes are still hashed so a wrong claim can't borrow someone's blob
+            ContentBlob existing = contentBlobRepository.acquire(expected);
+            if (existing != null) {
+                try {
+                    hashingContent.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException | RuntimeException e) {
+                    release(expected, existing.getKey());
+                    throw e;
+                }
+                if (!expected.equals(HexFormat.of().formatHex(digest.digest()))) {
+                    release(expected, existing.getKey());
+                    throw new BadRequestException("Uploaded content does not match sha256 " + expectedSha256);
+                }
+                return reuse(existing, fileName, contentType);
+            }
+        }
+
+        S3ObjectDetails uploaded = s3FileService.uploadStreamToS3(bucketName, hashingContent, fileName, contentType, keyPrefix);
+        String hash = HexFormat.of().formatHex(digest.digest());
+        if (expected != null && !expected.equals(hash)) {
+            deleteQuietly(uploaded.getKey());
+            throw new BadRequestException("Uploaded content does not match sha256 " + expectedSha256);
+        }
+
+        ContentBlob existing = contentBlobRepository.acquire(hash);
+        if (existing == null) {
+            ContentBlob blob = new ContentBlob(hash, uploaded.getKey(), uploaded.getObjectUrl(), uploaded.getContentLength(),
+                    uploaded.getETag(), 1, System.currentTimeMillis());
+            if (contentBlobRepository.register(blob)) {
+                uploaded.setSha256(hash);
+                return uploaded;
+            }
+            // A concurrent upload of the same bytes registered first
+            existing = contentBlobRepository.acquire(hash);
+        }
+        if (existing == null) {
+            // The only other copy is being deleted right now, so keep ours outside the index
+            log.debug("Keeping {} unshared, blob {} is being removed", uploaded.getKey(), hash);
+            return uploaded;
+        }
+
+        deleteQuietly(uploaded.getKey());
+        return reuse(existing, fileName, contentType);
+    }
+
+    // Drops one reference and deletes the object together with its index entry when it was the last one
+    public void release(String hash, String key) {
+        long remaining;
+        try {
+            remaining = contentBlobRepository.release(hash);
+        } catch (ConditionalCheckFailedException e) {
+            log.warn("Content blob {} was already fully released", hash);
+            return;
+        }
+        if (remaining == 0 && contentBlobRepository.deleteIfUnreferenced(hash)) {
+            deleteQuietly(key);
+        }
+    }
+
+    public CompletableFuture<Void> releaseAsync(String hash, String key) {
+        return contentBlobRepository.releaseAsync(hash)
+                .thenCompose(remaining -> remaining == 0
+                        ? contentBlobRepository.deleteIfUnreferencedAsync(hash)
+                        : CompletableFuture.completedFuture(false))
+                .thenCompose(deleted -> deleted
+                        ? s3FileService.deleteFileFromS3Async(bucketName, key)
+                        : CompletableFuture.<Void>completedFuture(null))
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (!(cause instanceof ConditionalCheckFailedException)) {
+                        log.warn("Failed to release content blob {}", hash, cause);
+                    }
+                    return null;
+                });
+    }
+
+    private S3ObjectDetails reuse(ContentBlob blob, String fileName, String contentType) {
+        deduplicatedCounter.increment();
+        bytesSavedCounter.increment(blob.getContentLength());
+        return new S3ObjectDetails(fileName, blob.getUrl(), blob.getKey(), contentType, blob.getContentLength(),
+                Instant.ofEpochMilli(blob.getCreatedAt()).toString(), blob.getETag(), blob.getHash());
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            s3FileService.deleteFileFromS3(bucketName, key);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete object {} from bucket {}", key, bucketName, e);
+        }
+    }
+
+    private String normalize(String sha256) {
+        if (sha256 == null || sha256.isBlank()) {
+            return null;
+        }
+        String hex = sha256.trim().toLowerCase(Locale.ROOT);
+        if (!SHA256_HEX.matcher(hex).matches()) {
+            throw new BadRequestException("sha256 must be 64 hexadecimal characters");
+        }
+        return hex;
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
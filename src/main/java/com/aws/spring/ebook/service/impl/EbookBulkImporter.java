@@ -0,0 +1,165 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.BulkImportItem;
+import com.aws.spring.ebook.dto.BulkImportResult;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.respository.EbookRepository;
+import com.aws.spring.ebook.service.S3FileService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+@Component
+@Slf4j
+public class EbookBulkImporter {
+
+    private final S3FileService s3FileService;
+    private final ContentDeduplicator contentDeduplicator;
+    private final EbookRepository ebookRepository;
+    private final ExecutorService ebookImportExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    public EbookBulkImporter(S3FileService s3FileService,
+                             ContentDeduplicator contentDeduplicator,
+                             EbookRepository ebookRepository,
+                             @Qualifier("ebookImportExecutor") ExecutorService ebookImportExecutor) {
+        this.s3FileService = s3FileService;
+        this.contentDeduplicator = contentDeduplicator;
+        this.ebookRepository = ebookRepository;
+        this.ebookImportExecutor = ebookImportExecutor;
+    }
+
+    // Results come back in manifest order, followed by any uploaded file the manifest did not mention
+    public List<BulkImportResult> importEbooks(List<MultipartFile> files, List<BulkImportItem> manifest) {
+        // Items are matched to files by name, so a name shared by several files can't be resolved and fails
+        // every item that uses it instead of silently keeping one of the files
+        Map<String, MultipartFile> filesByName = new LinkedHashMap<>();
+        Set<String> duplicateNames = new LinkedHashSet<>();
+        for (MultipartFile file : files) {
+            if (filesByName.putIfAbsent(file.getOriginalFilename(), file) != null) {
+                duplicateNames.add(file.getOriginalFilename());
+            }
+        }
+        filesByName.keySet().removeAll(duplicateNames);
+        Set<String> usedNames = new HashSet<>();
+
+        // Stage 1: upload every valid item to S3, at most ebookImportExecutor's pool size at a time
+        BulkImportResult[] results = new BulkImportResult[manifest.size()];
+        List<CompletableFuture<Ebook>> uploads = new ArrayList<>(manifest.size());
+        for (int i = 0; i < manifest.size(); i++) {
+            BulkImportItem item = manifest.get(i);
+            MultipartFile file = filesByName.remove(item.getFileName());
+            boolean firstUse = usedNames.add(item.getFileName());
+            String problem = duplicateNames.contains(item.getFileName()) ? "Several uploaded files share this name"
+                    : !firstUse ? "File already used by an earlier manifest entry"
+                    : validate(item, file);
+            if (problem != null) {
+                results[i] = BulkImportResult.failed(item.getFileName(), problem);
+                uploads.add(null);
+            } else {
+                uploads.add(CompletableFuture.supplyAsync(() -> upload(item, file), ebookImportExecutor));
+            }
+        }
+
+        List<Ebook> uploaded = new ArrayList<>();
+        for (int i = 0; i < manifest.size(); i++) {
+            if (uploads.get(i) == null) {
+                continue;
+            }
+            String fileName = manifest.get(i).getFileName();
+            try {
+                Ebook ebook = uploads.get(i).join();
+                uploaded.add(ebook);
+                results[i] = BulkImportResult.created(fileName, ebook);
+            } catch (CompletionException e) {
+                log.error("Failed to upload {} during bulk import", fileName, e.getCause());
+                results[i] = BulkImportResult.failed(fileName, "Upload failed: " + describe(e.getCause()));
+            }
+        }
+
+        // Stage 2: register the metadata of everything that reached S3 in BatchWriteItem groups
+        List<Ebook> notWritten = ebookRepository.createItems(uploaded);
+        for (Ebook ebook : notWritten) {
+            // Best effort: don't leave objects (or blob references) behind that no catalog entry points to
+            try {
+                if (ebook.getContentHash() != null) {
+                    contentDeduplicator.release(ebook.getContentHash(), objectNameOf(ebook));
+                } else {
+                    s3FileService.deleteFileFromS3(bucketName, objectNameOf(ebook));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to remove orphaned object for ebook {}", ebook.getEbookId(), e);
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].isCreated() && notWritten.contains(results[i].getEbook())) {
+                results[i] = BulkImportResult.failed(results[i].getFileName(), "Metadata could not be saved");
+            }
+        }
+
+        List<BulkImportResult> report = new ArrayList<>(Arrays.asList(results));
+        filesByName.keySet().forEach(fileName ->
+                report.add(BulkImportResult.failed(fileName, "No manifest entry for this file")));
+        duplicateNames.stream()
+                .filter(fileName -> !usedNames.contains(fileName))
+                .forEach(fileName -> report.add(BulkImportResult.failed(fileName, "Several uploaded files share this name")));
+        return report;
+    }
+
+    private String validate(BulkImportItem item, MultipartFile file) {
+        if (file == null) {
+            return "No file uploaded with this name";
+        }
+        if (isBlank(item.getTitle()) || isBlank(item.getAuthor()) || isBlank(item.getGenre())) {
+            return "title, author and genre are required";
+        }
+        return null;
+    }
+
+    private Ebook upload(BulkImportItem item, MultipartFile file) {
+        String ebookId = UUID.randomUUID().toString();
+        S3ObjectDetails s3ObjectDetails;
+        try (InputStream content = file.getInputStream()) {
+            // Duplicates within the batch or of already stored files end up sharing one object
+            s3ObjectDetails = contentDeduplicator.store(ebookId, content, file.getOriginalFilename(), file.getContentType(), null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Ebook(ebookId, item.getTitle(), item.getAuthor(), item.getGenre(), s3ObjectDetails.getObjectUrl(),
+                1L, s3ObjectDetails.getSha256());
+    }
+
+    private String objectNameOf(Ebook ebook) {
+        return ebook.getUrl().substring(ebook.getUrl().lastIndexOf("/") + 1);
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    // NPEs and some SDK client errors carry no message, which would otherwise be reported as "null"
+    private String describe(Throwable error) {
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+}
@@ -1,156 +1,320 @@
 package com.aws.spring.ebook.service.impl;
 
 
+import com.aws.spring.ebook.dto.BulkImportItem;
+import com.aws.spring.ebook.dto.BulkImportResult;
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.DirectUploadCompletion;
+import com.aws.spring.ebook.dto.DirectUploadRequest;
+import com.aws.spring.ebook.dto.DirectUploadTicket;
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.EbookUpdate;
 import com.aws.spring.ebook.dto.EbookSqsMessage;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
 import com.aws.spring.ebook.dto.S3ObjectDetails;
 import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.exception.BadRequestException;
 import com.aws.spring.ebook.exception.EBookNotFoundException;
+import com.aws.spring.ebook.exception.VersionConflictException;
 import com.aws.spring.ebook.respository.EbookRepository;
 import com.aws.spring.ebook.service.EbookService;
 import com.aws.spring.ebook.service.S3BucketService;
 import com.aws.spring.ebook.service.S3FileService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.services.sns.SnsClient;
-import software.amazon.awssdk.services.sns.model.PublishRequest;
-import software.amazon.awssdk.services.sns.model.PublishResponse;
-import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
+@Observed(name = "ebook.service")
 public class EbookServiceImpl implements EbookService {
 
+    private static final int MAX_PARTS = 10_000;
+
     private final EbookRepository ebookRepository;
     private final S3FileService s3FileService;
-    private final SqsClient sqsClient;
-    private final SnsClient snsClient;
-
-    @Value("${aws.sqsQueueUrl}")
-    private String sqsQueueUrl;
-
-    @Value("${aws.snsTopicArn}")
-    private String snsTopicArn;
+    private final SqsBatchProducer sqsBatchProducer;
+    private final SnsDigestNotifier snsDigestNotifier;
+    private final EbookBulkImporter ebookBulkImporter;
+    private final ContentDeduplicator contentDeduplicator;
 
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
 
+    @Value("${aws.s3.direct-upload.url-validity:1h}")
+    private Duration directUploadUrlValidity;
+
+    @Value("${aws.s3.direct-upload.multipart-threshold:100MB}")
+    private DataSize directUploadMultipartThreshold;
+
+    @Value("${aws.s3.upload.part-size:8MB}")
+    private DataSize partSize;
+
+    // Off by default, as in the original service: new eBooks are only queued for processing when enabled
+    @Value("${aws.sqs.enabled:false}")
+    private boolean sqsEnabled;
+
+    // Same for the SNS announcements to subscribers
+    @Value("${aws.sns.enabled:false}")
+    private boolean snsEnabled;
+
     @Override
     public List<Ebook> getAllEbooks() {
         return ebookRepository.getAllItems();
     }
 
+    @Override
+    public EbookPage getEbooks(int pageSize, String nextToken) {
+        return ebookRepository.getItems(pageSize, nextToken);
+    }
+
     @Override
     public Ebook getEbook(String ebookId) {
         return ebookRepository.getItem(ebookId);
     }
 
     @Override
-    public Ebook createEbook(MultipartFile file, String title, String author, String genre) throws IOException {
-        String ebookId = UUID.randomUUID().toString();
-        S3ObjectDetails s3ObjectDetails = s3FileService.uploadFileToS3(bucketName, file, ebookId);
+    public EbookPage getEbooksByAuthor(String author, int pageSize, String nextToken, boolean descending) {
+        return ebookRepository.getItemsByAuthor(author, pageSize, nextToken, descending);
+    }
+
+    @Override
+    public EbookPage getEbooksByGenre(String genre, int pageSize, String nextToken, boolean descending) {
+        return ebookRepository.getItemsByGenre(genre, pageSize, nextToken, descending);
+    }
+
+    @Override
+    public Ebook createEbook(MultipartFile file, String title, String author, String genre, String sha256) throws IOException {
+        String ebookId = reserveEbookId();
+        S3ObjectDetails s3ObjectDetails;
+        try (InputStream content = file.getInputStream()) {
+            s3ObjectDetails = uploadEbookFile(ebookId, content, file.getOriginalFilename(), file.getContentType(), sha256);
+        }
+
+        return createEbook(ebookId, s3ObjectDetails, title, author, genre);
+    }
+
+    @Override
+    public String reserveEbookId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public S3ObjectDetails uploadEbookFile(String ebookId, InputStream content, String fileName, String contentType,
+                                           String sha256) throws IOException {
+        // Identical bytes already in the bucket are referenced instead of stored again
+        return contentDeduplicator.store(ebookId, content, fileName, contentType, sha256);
+    }
 
-        Ebook ebook = new Ebook(ebookId, title, author, genre, s3ObjectDetails.getObjectUrl());
-        ebookRepository.createItem(ebook);
+    @Override
+    public Ebook createEbook(String ebookId, S3ObjectDetails uploadedFile, String title, String author, String genre) {
+        Ebook ebook = new Ebook(ebookId, title, author, genre, uploadedFile.getObjectUrl(), 1L, uploadedFile.getSha256());
+        try {
+            ebookRepository.createItem(ebook);
+        } catch (RuntimeException e) {
+            if (uploadedFile.getSha256() != null) {
+                contentDeduplicator.release(uploadedFile.getSha256(), uploadedFile.getKey());
+            }
+            throw e;
+        }
 
         // Send message to SQS for background processing
-//        sendEbookToProcessingQueue(ebook);
+        sendEbookToProcessingQueue(ebook);
 
         // Notify users about the new eBook using SNS
-//        notifyUsersOfNewEbook(ebook);
+        notifyUsersOfNewEbook(ebook);
 
         return ebook;
     }
 
-    private void sendEbookToProcessingQueue(Ebook ebook) {
-        EbookSqsMessage message = new EbookSqsMessage(ebook.getEbookId(), ebook.getTitle(), ebook.getUrl());
-        String messageBody = convertToJson(message);
+    @Override
+    public DirectUploadTicket startDirectUpload(DirectUploadRequest request) {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new BadRequestException("fileName is required");
+        }
 
-        SendMessageRequest sendMessageRequest = SendMessageRequest.builder()
-                .queueUrl(sqsQueueUrl)
-                .messageBody(messageBody)
-                .build();
+        String ebookId = reserveEbookId();
+        String key = ebookId + "_" + request.getFileName();
+        String expiresAt = Instant.now().plus(directUploadUrlValidity).toString();
 
-        SendMessageResponse response = sqsClient.sendMessage(sendMessageRequest);
-        log.info("Message sent successfully: {}", response.messageId());
+        Long contentLength = request.getContentLength();
+        if (contentLength == null || contentLength < directUploadMultipartThreshold.toBytes()) {
+            String uploadUrl = s3FileService.generatePresignedUploadUrl(bucketName, key, request.getContentType(), directUploadUrlValidity);
+            return new DirectUploadTicket(ebookId, key, uploadUrl, null, null, null, expiresAt);
+        }
+
+        // S3 allows at most 10,000 parts, so very large files get larger parts
+        long size = Math.max(partSize.toBytes(), (contentLength + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((contentLength + size - 1) / size);
+        String uploadId = s3FileService.startMultipartUpload(bucketName, key, request.getContentType());
+        List<String> partUrls = new ArrayList<>(partCount);
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            partUrls.add(s3FileService.generatePresignedPartUrl(bucketName, key, uploadId, partNumber, directUploadUrlValidity));
+        }
+        return new DirectUploadTicket(ebookId, key, null, uploadId, size, partUrls, expiresAt);
     }
 
-    private void notifyUsersOfNewEbook(Ebook ebook) {
-        String message = "New eBook Available: '" + ebook.getTitle() + "' by " + ebook.getAuthor() +
-                ". Check it out at: " + ebook.getUrl();
+    @Override
+    public Ebook completeDirectUpload(String ebookId, DirectUploadCompletion completion) {
+        if (isBlank(completion.getFileName()) || isBlank(completion.getTitle())
+                || isBlank(completion.getAuthor()) || isBlank(completion.getGenre())) {
+            throw new BadRequestException("fileName, title, author and genre are required");
+        }
 
-        PublishRequest publishRequest = PublishRequest.builder()
-                .topicArn(snsTopicArn)
-                .message(message)
-                .build();
+        // The key is derived from the reserved id again, so a client can only complete its own object
+        String key = ebookId + "_" + completion.getFileName();
+        S3ObjectDetails uploadedFile;
+        try {
+            if (completion.getUploadId() != null) {
+                if (completion.getParts() == null || completion.getParts().isEmpty()) {
+                    throw new BadRequestException("parts are required to complete a multipart upload");
+                }
+                s3FileService.completeMultipartUpload(bucketName, key, completion.getUploadId(), completion.getParts());
+            }
+            uploadedFile = s3FileService.getObjectDetails(bucketName, key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 400 || e.statusCode() == 404) {
+                // HEAD answers carry no error body, so the status is all we can report
+                throw new BadRequestException("Upload for ebook " + ebookId + " is missing or incomplete");
+            }
+            throw e;
+        }
 
-        PublishResponse response = snsClient.publish(publishRequest);
-        log.info("Notification sent successfully: {}", response.messageId());
+        return createEbook(ebookId, uploadedFile, completion.getTitle(), completion.getAuthor(), completion.getGenre());
     }
 
-    private String convertToJson(Object object) {
-        try {
-            return new ObjectMapper().writeValueAsString(object);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Error converting to JSON", e);
+    private boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    @Override
+    public List<BulkImportResult> importEbooks(List<MultipartFile> files, List<BulkImportItem> manifest) {
+        List<BulkImportResult> results = ebookBulkImporter.importEbooks(files, manifest);
+        for (BulkImportResult result : results) {
+            if (result.isCreated()) {
+                sendEbookToProcessingQueue(result.getEbook());
+                notifyUsersOfNewEbook(result.getEbook());
+            }
+        }
+        return results;
+    }
+
+    private void sendEbookToProcessingQueue(Ebook ebook) {
+        if (!sqsEnabled) {
+            return;
+        }
+        EbookSqsMessage message = new EbookSqsMessage(ebook.getEbookId(), ebook.getTitle(), ebook.getUrl());
+
+        // Buffered and sent in batches off the request thread, so creation latency no longer includes SQS
+        if (sqsBatchProducer.send(message)) {
+            log.info("Message queued for ebook: {}", ebook.getEbookId());
         }
     }
 
+    private void notifyUsersOfNewEbook(Ebook ebook) {
+        if (!snsEnabled) {
+            return;
+        }
+        // Collected into periodic digests, so a bulk import sends a handful of notifications instead of one per eBook
+        snsDigestNotifier.notifyNewEbook(ebook);
+    }
+
     @Override
-    public Ebook updateEbook(String ebookId, String title, String author, String genre, MultipartFile newFile) throws IOException {
-        Ebook existingEbook = ebookRepository.getItem(ebookId);
-        if (existingEbook == null) {
+    public Ebook updateEbook(String ebookId, String title, String author, String genre, MultipartFile newFile,
+                             String sha256, Long expectedVersion) throws IOException {
+        // Only the supplied fields are written, in one conditional UpdateItem without reading the item first
+        EbookUpdate update = new EbookUpdate(isBlank(title) ? null : title, isBlank(author) ? null : author,
+                isBlank(genre) ? null : genre, null, null);
+        if (newFile == null) {
+            return ebookRepository.updateItem(ebookId, update, expectedVersion);
+        }
+
+        // Swapping the file needs the old one to release it; pinning the version read makes exactly one
+        // of two racing replacements win, so each old reference is released once
+        Ebook current = ebookRepository.getItem(ebookId);
+        if (current == null) {
             throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
         }
+        long version = expectedVersion != null ? expectedVersion : current.getVersion();
+        if (version != current.getVersion()) {
+            throw new VersionConflictException(ebookId, version, current.getVersion());
+        }
 
-        if (title != null && !title.isBlank()) existingEbook.setTitle(title);
-        if (author != null && !author.isBlank()) existingEbook.setAuthor(author);
-        if (genre != null && !genre.isBlank()) existingEbook.setGenre(genre);
-        if (newFile != null) {
-            S3ObjectDetails s3ObjectDetails = s3FileService.uploadFileToS3(bucketName, newFile, ebookId);
+        S3ObjectDetails stored;
+        try (InputStream content = newFile.getInputStream()) {
+            // A fresh key prefix, since the current key may be a blob other eBooks still point at
+            stored = uploadEbookFile(reserveEbookId(), content, newFile.getOriginalFilename(), newFile.getContentType(), sha256);
         }
+        update.setUrl(stored.getObjectUrl());
+        update.setContentHash(stored.getSha256());
 
-        ebookRepository.updateItem(existingEbook);
-        return existingEbook;
+        Ebook updated;
+        try {
+            updated = ebookRepository.updateItem(ebookId, update, version);
+        } catch (RuntimeException e) {
+            releaseFile(stored.getSha256(), stored.getKey());
+            throw e;
+        }
+        releaseFile(current.getContentHash(), objectNameOf(current));
+        return updated;
     }
 
     @Override
     public boolean deleteEbook(String ebookId) {
-        Ebook ebook = ebookRepository.getItem(ebookId);
+        // The item goes first: a failure afterwards leaks an object instead of leaving an eBook without its file
+        Ebook ebook = ebookRepository.deleteItem(ebookId);
         if (ebook == null) {
             throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
         }
 
-        String key = getObjectName(ebookId);
-        s3FileService.deleteFileFromS3(bucketName, key);
-        ebookRepository.deleteItem(ebookId);
-
+        releaseFile(ebook.getContentHash(), objectNameOf(ebook));
         return true;
     }
 
+    // Shared blobs lose one reference and disappear with the last one; unshared files are deleted outright
+    private void releaseFile(String contentHash, String key) {
+        if (contentHash != null) {
+            contentDeduplicator.release(contentHash, key);
+        } else {
+            s3FileService.deleteFileFromS3(bucketName, key);
+        }
+    }
+
     @Override
     public byte[] downloadEbook(String ebookId) throws IOException {
-        Ebook ebook = ebookRepository.getItem(ebookId);
-        if (ebook == null) {
-            throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
+        // The whole file is wanted anyway, so large ones are fetched as parallel ranges
+        try (InputStream inputStream = s3FileService.downloadFileFromS3Parallel(bucketName, getObjectName(ebookId))) {
+            return inputStream.readAllBytes();
         }
+    }
 
+    @Override
+    public ResponseInputStream<GetObjectResponse> streamEbook(String ebookId) {
+        return streamEbook(ebookId, new S3DownloadOptions());
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> streamEbook(String ebookId, S3DownloadOptions options) {
+        // getObjectName fails with EBookNotFoundException for unknown ids
         String key = getObjectName(ebookId);
-        try (InputStream inputStream = s3FileService.downloadFileFromS3(bucketName, key)) {
-            return inputStream.readAllBytes();
-        }
+        return s3FileService.downloadFileFromS3(bucketName, key, options);
     }
 
     @Override
@@ -160,6 +324,26 @@ public class EbookServiceImpl implements EbookService {
             throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
         }
 
+        return objectNameOf(ebook);
+    }
+
+    @Override
+    public CachedS3Object getCachedEbookFile(String ebookId, boolean fillOnMiss) {
+        return s3FileService.getCachedFile(bucketName, getObjectName(ebookId), fillOnMiss);
+    }
+
+    @Override
+    public S3ObjectDetails getEbookFileDetails(String ebookId) {
+        return s3FileService.getObjectDetails(bucketName, getObjectName(ebookId));
+    }
+
+    @Override
+    public String getDownloadUrl(String ebookId) {
+        String key = getObjectName(ebookId);
+        return s3FileService.generatePresignedDownloadUrl(bucketName, key, key);
+    }
+
+    private String objectNameOf(Ebook ebook) {
         String fileUrl = ebook.getUrl();
         if (fileUrl == null || !fileUrl.contains("/")) {
             throw new IllegalArgumentException("Invalid S3 URL");
@@ -167,4 +351,42 @@ public class EbookServiceImpl implements EbookService {
 
         return fileUrl.substring(fileUrl.lastIndexOf("/") + 1);
     }
+
+    @Override
+    public CompletableFuture<EbookPage> getEbooksAsync(int pageSize, String nextToken) {
+        return ebookRepository.getItemsAsync(pageSize, nextToken);
+    }
+
+    @Override
+    public CompletableFuture<Ebook> getEbookAsync(String ebookId) {
+        return ebookRepository.getItemAsync(ebookId);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteEbookAsync(String ebookId) {
+        return ebookRepository.deleteItemAsync(ebookId)
+                .thenCompose(ebook -> {
+                    if (ebook == null) {
+                        throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
+                    }
+                    return ebook.getContentHash() != null
+                            ? contentDeduplicator.releaseAsync(ebook.getContentHash(), objectNameOf(ebook))
+                            : s3FileService.deleteFileFromS3Async(bucketName, objectNameOf(ebook));
+                });
+    }
+
+    @Override
+    public CompletableFuture<ResponseInputStream<GetObjectResponse>> streamEbookAsync(String ebookId, S3DownloadOptions options) {
+        return requireEbookAsync(ebookId)
+                .thenCompose(ebook -> s3FileService.downloadFileFromS3Async(bucketName, objectNameOf(ebook), options));
+    }
+
+    private CompletableFuture<Ebook> requireEbookAsync(String ebookId) {
+        return ebookRepository.getItemAsync(ebookId).thenApply(ebook -> {
+            if (ebook == null) {
+                throw new EBookNotFoundException("Ebook", "ebookId", ebookId);
+            }
+            return ebook;
+        });
+    }
 }
@@ -0,0 +1,243 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.ResumableUploadRequest;
+import com.aws.spring.ebook.dto.ResumableUploadStatus;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.dto.UploadedPart;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.entity.UploadSession;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.exception.EBookNotFoundException;
+import com.aws.spring.ebook.exception.EbookAlreadyExistsException;
+import com.aws.spring.ebook.respository.UploadSessionRepository;
+import com.aws.spring.ebook.service.EbookService;
+import com.aws.spring.ebook.service.ResumableUploadService;
+import com.aws.spring.ebook.service.S3FileService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadServiceImpl implements ResumableUploadService {
+
+    // S3 rejects multipart uploads with more parts
+    private static final int MAX_PARTS = 10_000;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final S3FileService s3FileService;
+    private final EbookService ebookService;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${aws.s3.resumable.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Value("${aws.s3.resumable.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    @Override
+    public ResumableUploadStatus createSession(ResumableUploadRequest request) {
+        if (isBlank(request.getFileName()) || isBlank(request.getTitle())
+                || isBlank(request.getAuthor()) || isBlank(request.getGenre())) {
+            throw new BadRequestException("fileName, title, author and genre are required");
+        }
+
+        String sessionId = ebookService.reserveEbookId();
+        String key = sessionId + "_" + request.getFileName();
+        String uploadId = s3FileService.startMultipartUpload(bucketName, key, request.getContentType());
+        long now = System.currentTimeMillis();
+
+        UploadSession session = new UploadSession(sessionId, key, uploadId, request.getFileName(), request.getContentType(),
+                request.getTitle(), request.getAuthor(), request.getGenre(), chunkSize.toBytes(), new HashMap<>(), null, now, now);
+        uploadSessionRepository.createSession(session);
+        return statusOf(session);
+    }
+
+    @Override
+    public ResumableUploadStatus uploadChunk(String sessionId, int partNumber, InputStream content, long contentLength,
+                                             boolean last) {
+        UploadSession session = requireSession(sessionId);
+        if (partNumber < 1 || partNumber > MAX_PARTS) {
+            throw new BadRequestException("Chunk number must be between 1 and " + MAX_PARTS);
+        }
+        // Fixed-size chunks keep the resume offset exact and every part above S3's 5MB minimum; only the final one
+        // may be shorter
+        if (last ? contentLength < 1 || contentLength > session.getPartSize() : contentLength != session.getPartSize()) {
+            throw new BadRequestException(last ? "The final chunk must be between 1 and " + session.getPartSize() + " bytes"
+                    : "Chunks must be exactly " + session.getPartSize() + " bytes; mark a shorter last chunk as final");
+        }
+        Integer lastPartNumber = session.getLastPartNumber();
+        if (lastPartNumber != null && (last ? partNumber != lastPartNumber : partNumber >= lastPartNumber)) {
+            throw new BadRequestException("Chunk " + lastPartNumber + " was already sent as the final chunk");
+        }
+        if (last && session.getParts().keySet().stream().anyMatch(uploaded -> uploaded > partNumber)) {
+            throw new BadRequestException("Chunks after chunk " + partNumber + " were already sent, it can't be the final one");
+        }
+
+        // Re-sending a chunk simply overwrites the part, so clients can retry any chunk they are unsure about
+        UploadedPart part = s3FileService.uploadPart(bucketName, session.getKey(), session.getUploadId(), partNumber,
+                content, contentLength);
+        uploadSessionRepository.recordPart(sessionId, partNumber, part.getETag(), last);
+
+        session.getParts().put(partNumber, part.getETag());
+        if (last) {
+            session.setLastPartNumber(partNumber);
+        }
+        return statusOf(session);
+    }
+
+    @Override
+    public ResumableUploadStatus getStatus(String sessionId) {
+        return statusOf(requireSession(sessionId));
+    }
+
+    @Override
+    public Ebook completeSession(String sessionId) {
+        UploadSession session = requireSession(sessionId);
+        ResumableUploadStatus status = statusOf(session);
+        if (session.getLastPartNumber() == null) {
+            throw new BadRequestException("The final chunk has not been sent, resume from chunk " + status.getNextPartNumber());
+        }
+        if (status.getNextPartNumber() != session.getLastPartNumber() + 1
+                || status.getUploadedParts().size() != session.getLastPartNumber()) {
+            throw new BadRequestException("Chunks are missing, resume from chunk " + status.getNextPartNumber());
+        }
+
+        List<UploadedPart> parts = session.getParts().entrySet().stream()
+                .map(entry -> new UploadedPart(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        S3ObjectDetails uploadedFile = completeUpload(session, parts);
+
+        Ebook ebook;
+        try {
+            ebook = ebookService.createEbook(sessionId, uploadedFile, session.getTitle(), session.getAuthor(), session.getGenre());
+        } catch (EbookAlreadyExistsException e) {
+            // The id was reserved for this session, so the eBook is normally ours from an attempt that failed afterwards
+            Ebook existing = ebookService.getEbook(sessionId);
+            if (existing == null || !uploadedFile.getObjectUrl().equals(existing.getUrl())) {
+                discard(session);
+                throw e;
+            }
+            ebook = existing;
+        } catch (RuntimeException e) {
+            // Transient failures keep the session, so the client can simply call complete again
+            if (!isRetryable(e)) {
+                discard(session);
+            }
+            throw e;
+        }
+        uploadSessionRepository.deleteSession(sessionId);
+        return ebook;
+    }
+
+    // A retried completion finds the multipart upload already completed, so S3 is asked for the object instead
+    private S3ObjectDetails completeUpload(UploadSession session, List<UploadedPart> parts) {
+        try {
+            s3FileService.completeMultipartUpload(bucketName, session.getKey(), session.getUploadId(), parts);
+        } catch (NoSuchUploadException e) {
+            log.debug("Multipart upload {} is already gone, looking for its object", session.getUploadId());
+        }
+        try {
+            return s3FileService.getObjectDetails(bucketName, session.getKey());
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                throw e;
+            }
+            // Aborted rather than completed, nothing is left to resume
+            uploadSessionRepository.deleteSession(session.getSessionId());
+            throw new BadRequestException("Upload session " + session.getSessionId() + " no longer has an upload, start a new one");
+        }
+    }
+
+    // The completed object would never be referenced by an eBook, and the sweeper only aborts multipart uploads
+    private void discard(UploadSession session) {
+        try {
+            s3FileService.deleteFileFromS3(bucketName, session.getKey());
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete completed upload {}", session.getKey(), e);
+        }
+        uploadSessionRepository.deleteSession(session.getSessionId());
+    }
+
+    // Throttling, 5xx and broken connections may succeed on the next attempt; anything else fails the same way again
+    private boolean isRetryable(RuntimeException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+
+    @Override
+    public void abortSession(String sessionId) {
+        abort(requireSession(sessionId));
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${aws.s3.resumable.sweep-interval:15m}", fixedDelayString = "${aws.s3.resumable.sweep-interval:15m}")
+    public int sweepAbandonedSessions() {
+        try {
+            List<UploadSession> abandoned = uploadSessionRepository.getSessionsIdleSince(Instant.now().minus(sessionTtl));
+            abandoned.forEach(this::abort);
+            if (!abandoned.isEmpty()) {
+                log.info("Aborted {} abandoned upload sessions", abandoned.size());
+            }
+            return abandoned.size();
+        } catch (RuntimeException e) {
+            log.error("Error sweeping abandoned upload sessions", e);
+            return 0;
+        }
+    }
+
+    private void abort(UploadSession session) {
+        try {
+            // Frees the storage of every part uploaded so far
+            s3FileService.abortMultipartUpload(bucketName, session.getKey(), session.getUploadId());
+        } catch (NoSuchUploadException e) {
+            log.debug("Multipart upload {} was already gone", session.getUploadId());
+        }
+        uploadSessionRepository.deleteSession(session.getSessionId());
+    }
+
+    private UploadSession requireSession(String sessionId) {
+        UploadSession session = uploadSessionRepository.getSession(sessionId);
+        if (session == null) {
+            throw new EBookNotFoundException("Upload session", "sessionId", sessionId);
+        }
+        return session;
+    }
+
+    private ResumableUploadStatus statusOf(UploadSession session) {
+        Map<Integer, String> parts = session.getParts();
+        List<Integer> uploadedParts = parts.keySet().stream().sorted().collect(Collectors.toList());
+
+        // The offset only counts the unbroken run of chunks from the start, holes have to be filled first
+        int nextPartNumber = 1;
+        while (parts.containsKey(nextPartNumber)) {
+            nextPartNumber++;
+        }
+        return new ResumableUploadStatus(session.getSessionId(), session.getPartSize(), uploadedParts, nextPartNumber,
+                (nextPartNumber - 1) * session.getPartSize());
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,167 @@
+package com.aws.spring.ebook.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Component
+@Slf4j
+public class S3BucketPurger {
+
+    // DeleteObjects accepts at most 1000 keys per request
+    private static final int MAX_BATCH = 1000;
+    private static final Set<String> RETRYABLE_ERRORS = Set.of("SlowDown", "InternalError", "ServiceUnavailable");
+
+    private final S3Client s3Client;
+    private final S3ObjectCache s3ObjectCache;
+    private final ExecutorService s3PurgeExecutor;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+
+    public S3BucketPurger(S3Client s3Client,
+                          S3ObjectCache s3ObjectCache,
+                          @Qualifier("s3PurgeExecutor") ExecutorService s3PurgeExecutor,
+                          @Value("${aws.s3.purge.max-concurrency:8}") int maxConcurrency,
+                          @Value("${aws.s3.purge.max-attempts:5}") int maxAttempts) {
+        this.s3Client = s3Client;
+        this.s3ObjectCache = s3ObjectCache;
+        this.s3PurgeExecutor = s3PurgeExecutor;
+        this.maxConcurrency = maxConcurrency;
+        this.maxAttempts = maxAttempts;
+    }
+
+    // Deletes every object (and, for versioned buckets, every version and delete marker); returns the number removed
+    public long purge(String bucketName) {
+        AtomicLong deleted = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        // Listing runs ahead of the deletes by at most maxConcurrency batches
+        Semaphore inFlight = new Semaphore(maxConcurrency);
+
+        try (Stream<ObjectIdentifier> identifiers = isVersioned(bucketName) ? versions(bucketName) : objects(bucketName)) {
+            List<ObjectIdentifier> batch = new ArrayList<>(MAX_BATCH);
+            for (ObjectIdentifier identifier : (Iterable<ObjectIdentifier>) identifiers::iterator) {
+                batch.add(identifier);
+                if (batch.size() == MAX_BATCH) {
+                    batches.add(submit(bucketName, batch, inFlight, deleted, failed));
+                    batch = new ArrayList<>(MAX_BATCH);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.add(submit(bucketName, batch, inFlight, deleted, failed));
+            }
+
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while purging bucket " + bucketName, e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        if (failed.get() > 0) {
+            throw new IllegalStateException("Failed to delete " + failed.get() + " objects from bucket " + bucketName);
+        }
+        log.info("Purged {} objects from bucket {}", deleted.get(), bucketName);
+        return deleted.get();
+    }
+
+    private boolean isVersioned(String bucketName) {
+        // Suspended buckets still hold the versions written while versioning was enabled
+        BucketVersioningStatus status = s3Client.getBucketVersioning(GetBucketVersioningRequest.builder()
+                .bucket(bucketName)
+                .build()).status();
+        return status != null && status != BucketVersioningStatus.UNKNOWN_TO_SDK_VERSION;
+    }
+
+    private Stream<ObjectIdentifier> objects(String bucketName) {
+        // The paginator follows continuation tokens lazily, one page of up to 1000 keys at a time
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucketName).build())
+                .contents()
+                .stream()
+                .map(object -> ObjectIdentifier.builder().key(object.key()).build());
+    }
+
+    private Stream<ObjectIdentifier> versions(String bucketName) {
+        return s3Client.listObjectVersionsPaginator(ListObjectVersionsRequest.builder().bucket(bucketName).build())
+                .stream()
+                .flatMap(page -> Stream.concat(
+                        page.versions().stream()
+                                .map(version -> ObjectIdentifier.builder().key(version.key()).versionId(version.versionId()).build()),
+                        page.deleteMarkers().stream()
+                                .map(marker -> ObjectIdentifier.builder().key(marker.key()).versionId(marker.versionId()).build())));
+    }
+
+    private CompletableFuture<Void> submit(String bucketName, List<ObjectIdentifier> batch, Semaphore inFlight,
+                                           AtomicLong deleted, AtomicLong failed) throws InterruptedException {
+        inFlight.acquire();
+        return CompletableFuture.runAsync(() -> deleteBatch(bucketName, batch, deleted, failed), s3PurgeExecutor)
+                .whenComplete((result, error) -> inFlight.release());
+    }
+
+    private void deleteBatch(String bucketName, List<ObjectIdentifier> batch, AtomicLong deleted, AtomicLong failed) {
+        List<ObjectIdentifier> remaining = batch;
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            List<ObjectIdentifier> retry = new ArrayList<>();
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        // Quiet mode only reports the keys that failed, which keeps the response small
+                        .delete(Delete.builder().objects(remaining).quiet(true).build())
+                        .build());
+                // Local copies must not outlive the purge; dropping one whose delete failed only costs a refetch
+                remaining.forEach(identifier -> s3ObjectCache.invalidate(bucketName, identifier.key()));
+
+                int errors = response.errors().size();
+                deleted.addAndGet(remaining.size() - errors);
+                for (S3Error error : response.errors()) {
+                    if (RETRYABLE_ERRORS.contains(error.code())) {
+                        retry.add(ObjectIdentifier.builder().key(error.key()).versionId(error.versionId()).build());
+                    } else {
+                        failed.incrementAndGet();
+                        log.warn("Failed to delete {} from bucket {}: {} {}", error.key(), bucketName, error.code(), error.message());
+                    }
+                }
+            } catch (S3Exception e) {
+                // 503 SlowDown or another server error on the whole request: back off and send the batch again
+                if (e.statusCode() < 500) {
+                    throw e;
+                }
+                retry = remaining;
+            }
+
+            if (!retry.isEmpty() && attempt >= maxAttempts) {
+                failed.addAndGet(retry.size());
+                log.warn("Giving up on {} objects in bucket {} after {} attempts", retry.size(), bucketName, attempt);
+                return;
+            }
+            if (!retry.isEmpty()) {
+                backoff(attempt);
+            }
+            remaining = retry;
+        }
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(Math.min(100L << attempt, 5000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying DeleteObjects", e);
+        }
+    }
+}
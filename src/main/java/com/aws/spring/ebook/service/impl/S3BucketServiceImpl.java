@@ -37,14 +37,8 @@ public class S3BucketServiceImpl implements S3BucketService {
 
     @Override
     public void removeBucket(String bucketName) {
-        ListObjectsV2Response objects = s3Client.listObjectsV2(ListObjectsV2Request.builder()
-                .bucket(bucketName)
-                .build());
-
-        // Objects are present, delete them first
-        if (!objects.contents().isEmpty()) {
-            s3FileService.deleteAllObjectsFromS3(bucketName);
-        }
+        // A bucket must be empty, including old versions and delete markers, before it can be deleted
+        s3FileService.deleteAllObjectsFromS3(bucketName);
 
         s3Client.deleteBucket(DeleteBucketRequest.builder()
                 .bucket(bucketName)
@@ -1,91 +1,241 @@
 package com.aws.spring.ebook.service.impl;
 
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
 import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.dto.S3ObjectSummary;
+import com.aws.spring.ebook.dto.S3UploadResult;
+import com.aws.spring.ebook.dto.UploadedPart;
 import com.aws.spring.ebook.service.S3FileService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
-import software.amazon.awssdk.services.s3.presigner.S3Presigner;
-import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
-import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
+@Observed(name = "ebook.storage")
 public class S3FileServiceImpl implements S3FileService {
 
-    private final S3Presigner s3Presigner = S3Presigner.create();
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final S3MultipartUploader s3MultipartUploader;
+    private final S3BucketPurger s3BucketPurger;
+    private final S3UrlPresigner s3UrlPresigner;
+    private final S3ObjectCache s3ObjectCache;
+    private final S3RangedDownloader s3RangedDownloader;
+    private final ExecutorService s3UploadExecutor;
+
+    public S3FileServiceImpl(S3Client s3Client,
+                             S3AsyncClient s3AsyncClient,
+                             S3MultipartUploader s3MultipartUploader,
+                             S3BucketPurger s3BucketPurger,
+                             S3UrlPresigner s3UrlPresigner,
+                             S3ObjectCache s3ObjectCache,
+                             S3RangedDownloader s3RangedDownloader,
+                             @Qualifier("s3UploadExecutor") ExecutorService s3UploadExecutor) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3MultipartUploader = s3MultipartUploader;
+        this.s3BucketPurger = s3BucketPurger;
+        this.s3UrlPresigner = s3UrlPresigner;
+        this.s3ObjectCache = s3ObjectCache;
+        this.s3RangedDownloader = s3RangedDownloader;
+        this.s3UploadExecutor = s3UploadExecutor;
+    }
 
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
 
+    @Value("${aws.s3.presign.download-validity:15m}")
+    private Duration downloadUrlValidity;
+
     @Override
     public List<String> listAllObjectsFromS3(String bucketName) {
         ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(bucketName)
                 .build();
 
-        ListObjectsV2Response response = s3Client.listObjectsV2(request);
-
-        // Extract and return object keys (file names)
-        return response.contents()
+        // The paginator keeps following continuation tokens until the last page
+        return s3Client.listObjectsV2Paginator(request)
+                .contents()
                 .stream()
                 .map(S3Object::key)
                 .collect(Collectors.toList());
     }
 
     @Override
-    public InputStream downloadFileFromS3(String bucketName, String key) {
+    public void listObjectsFromS3(String bucketName, String prefix, String delimiter, Integer maxKeys,
+                                  Consumer<S3ObjectSummary> consumer) {
+        long limit = maxKeys == null ? Long.MAX_VALUE : maxKeys;
+        long listed = 0;
+        CompletableFuture<ListObjectsV2Response> nextPage = s3AsyncClient.listObjectsV2(
+                listRequest(bucketName, prefix, delimiter, limit, null));
+
+        try {
+            while (nextPage != null) {
+                ListObjectsV2Response page = joinPage(nextPage);
+                listed += page.contents().size() + page.commonPrefixes().size();
+
+                // Fetch the following page while this one is being handed to the consumer
+                nextPage = page.isTruncated() && listed < limit
+                        ? s3AsyncClient.listObjectsV2(listRequest(bucketName, prefix, delimiter, limit - listed, page.nextContinuationToken()))
+                        : null;
 
-        GetObjectRequest request = GetObjectRequest.builder()
+                page.commonPrefixes().forEach(commonPrefix ->
+                        consumer.accept(new S3ObjectSummary(commonPrefix.prefix(), null, null, true)));
+                page.contents().forEach(object -> consumer.accept(new S3ObjectSummary(object.key(), object.size(),
+                        object.lastModified() == null ? null : object.lastModified().toString(), false)));
+            }
+        } finally {
+            if (nextPage != null) {
+                // The consumer gave up (e.g. the client disconnected), drop the prefetched page
+                nextPage.cancel(true);
+            }
+        }
+    }
+
+    private ListObjectsV2Request listRequest(String bucketName, String prefix, String delimiter, long remaining,
+                                             String continuationToken) {
+        return ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .delimiter(delimiter)
+                .maxKeys((int) Math.min(1000, remaining))
+                .continuationToken(continuationToken)
+                .build();
+    }
+
+    private ListObjectsV2Response joinPage(CompletableFuture<ListObjectsV2Response> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<String>> listAllObjectsFromS3Async(String bucketName) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(bucketName)
-                .key(key)
                 .build();
 
-        return s3Client.getObject(request);
+        List<String> keys = new ArrayList<>();
+        return s3AsyncClient.listObjectsV2Paginator(request)
+                .contents()
+                .subscribe(object -> keys.add(object.key()))
+                .thenApply(done -> keys);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadFileFromS3(String bucketName, String key) {
+        return downloadFileFromS3(bucketName, key, new S3DownloadOptions());
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadFileFromS3(String bucketName, String key, S3DownloadOptions options) {
+        return s3Client.getObject(getObjectRequest(bucketName, key, options));
+    }
+
+    @Override
+    public CompletableFuture<ResponseInputStream<GetObjectResponse>> downloadFileFromS3Async(String bucketName, String key,
+                                                                                            S3DownloadOptions options) {
+        // Completes once the response headers arrive; the body is then read as a regular blocking stream
+        return s3AsyncClient.getObject(getObjectRequest(bucketName, key, options), AsyncResponseTransformer.toBlockingInputStream());
+    }
+
+    private GetObjectRequest getObjectRequest(String bucketName, String key, S3DownloadOptions options) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range(options.getRange())
+                .ifMatch(options.getIfMatch())
+                .ifNoneMatch(options.getIfNoneMatch())
+                .ifModifiedSince(options.getIfModifiedSince())
+                .build();
     }
 
     @Override
     public S3ObjectDetails uploadFileToS3(String bucketName,
                                           MultipartFile file,
                                           String ebookId) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadStreamToS3(bucketName, inputStream, file.getOriginalFilename(), file.getContentType(), ebookId);
+        }
+    }
+
+    @Override
+    public S3ObjectDetails uploadStreamToS3(String bucketName,
+                                            InputStream content,
+                                            String fileName,
+                                            String contentType,
+                                            String ebookId) throws IOException {
         // Generate the key for the file in S3
-        String key =  ebookId + "_" + file.getOriginalFilename();
+        String key = ebookId + "_" + fileName;
 
-        // Upload the file to S3
-        s3Client.putObject(PutObjectRequest.builder()
-                        .bucket(bucketName)
-                        .key(key)
-                        .build(),
-                RequestBody.fromInputStream(file.getInputStream(), file.getInputStream().available()));
+        // Upload the file to S3, in parallel parts when it is larger than one part
+        S3UploadResult result = s3MultipartUploader.upload(bucketName, key, content, contentType);
+        // Other nodes notice an overwritten key on their next revalidation
+        s3ObjectCache.invalidate(bucketName, key);
 
         // Generate the URL for the uploaded file
         String objectUrl = "https://" + bucketName + ".s3.amazonaws.com/" + key;
 
-        // Retrieve the metadata of the uploaded file
-        HeadObjectResponse metadata = s3Client.headObject(HeadObjectRequest.builder()
+        // Build the details from what we just uploaded instead of a HEAD round trip
+        String lastModified = Instant.now().toString();
+
+        // Return the details in an S3ObjectDetails object
+        return new S3ObjectDetails(fileName, objectUrl, key, contentType, result.getContentLength(),
+                lastModified, result.getETag(), null);
+    }
+
+    @Override
+    public CompletableFuture<S3ObjectDetails> uploadFileToS3Async(String bucketName, MultipartFile file, String ebookId) {
+        String key = ebookId + "_" + file.getOriginalFilename();
+        PutObjectRequest request = PutObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .build());
+                .contentType(file.getContentType())
+                .contentLength(file.getSize())
+                .build();
 
-        // Extract metadata details
-        String contentType = metadata.contentType();
-        long contentLength = metadata.contentLength();
-        String lastModified = metadata.lastModified().toString();
-        String objectName = file.getOriginalFilename();
+        AsyncRequestBody body;
+        try {
+            // The blocking reads of the file stream happen on the upload pool, never on the SDK event loop
+            body = AsyncRequestBody.fromInputStream(file.getInputStream(), file.getSize(), s3UploadExecutor);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
-        // Return the details in an S3ObjectDetails object
-        return new S3ObjectDetails(objectName, objectUrl, key, contentType, contentLength, lastModified);
+        return s3AsyncClient.putObject(request, body).thenApply(response -> new S3ObjectDetails(
+                file.getOriginalFilename(),
+                "https://" + bucketName + ".s3.amazonaws.com/" + key,
+                key,
+                file.getContentType(),
+                file.getSize(),
+                Instant.now().toString(),
+                response.eTag(),
+                null));
     }
 
     @Override
@@ -94,40 +244,115 @@ public class S3FileServiceImpl implements S3FileService {
                 .bucket(bucketName)
                 .key(key)
                 .build());
+        s3ObjectCache.invalidate(bucketName, key);
     }
 
     @Override
-    public void deleteAllObjectsFromS3(String bucketName) {
-        ListObjectsV2Request listObjectsRequest = ListObjectsV2Request.builder()
+    public CompletableFuture<Void> deleteFileFromS3Async(String bucketName, String key) {
+        return s3AsyncClient.deleteObject(DeleteObjectRequest.builder()
                 .bucket(bucketName)
-                .build();
+                .key(key)
+                .build()).thenApply(response -> {
+                    s3ObjectCache.invalidate(bucketName, key);
+                    return null;
+                });
+    }
+
+    @Override
+    public InputStream downloadFileFromS3Parallel(String bucketName, String key) throws IOException {
+        return s3RangedDownloader.openStream(bucketName, key);
+    }
 
-        ListObjectsV2Response listObjectsResponse = s3Client.listObjectsV2(listObjectsRequest);
+    @Override
+    public CachedS3Object getCachedFile(String bucketName, String key, boolean fillOnMiss) {
+        return s3ObjectCache.get(bucketName, key, fillOnMiss);
+    }
 
-        // Delete each object in the bucket
-        listObjectsResponse.contents().forEach(s3Object -> {
-            DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Object.key())
-                    .build();
-            s3Client.deleteObject(deleteRequest);
-        });
+    @Override
+    public void deleteAllObjectsFromS3(String bucketName) {
+        // Pages through the whole bucket and deletes in concurrent 1000-key DeleteObjects batches
+        s3BucketPurger.purge(bucketName);
     }
 
     @Override
     public String generatePresignedUrl(String bucketName, String key, int expirationInMinutes) {
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+        return s3UrlPresigner.presignGet(bucketName, key, Duration.ofMinutes(expirationInMinutes), null);
+    }
+
+    @Override
+    public String generatePresignedUploadUrl(String bucketName, String key, String contentType, Duration validity) {
+        return s3UrlPresigner.presignPut(bucketName, key, contentType, validity);
+    }
+
+    @Override
+    public String startMultipartUpload(String bucketName, String key, String contentType) {
+        return s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .build();
+                .contentType(contentType)
+                .build()).uploadId();
+    }
 
-        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                .signatureDuration(Duration.ofMinutes(expirationInMinutes))
-                .getObjectRequest(getObjectRequest)
-                .build();
+    @Override
+    public String generatePresignedPartUrl(String bucketName, String key, String uploadId, int partNumber, Duration validity) {
+        return s3UrlPresigner.presignUploadPart(bucketName, key, uploadId, partNumber, validity);
+    }
 
-        PresignedGetObjectRequest presignedRequest = s3Presigner.presignGetObject(presignRequest);
+    @Override
+    public UploadedPart uploadPart(String bucketName, String key, String uploadId, int partNumber, InputStream content,
+                                   long contentLength) {
+        // Streams the request body straight into the part upload, the chunk is never held in memory
+        UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(contentLength)
+                        .build(),
+                RequestBody.fromInputStream(content, contentLength));
+        return new UploadedPart(partNumber, response.eTag());
+    }
+
+    @Override
+    public void completeMultipartUpload(String bucketName, String key, String uploadId, List<UploadedPart> parts) {
+        List<CompletedPart> completedParts = parts.stream()
+                .sorted(Comparator.comparingInt(UploadedPart::getPartNumber))
+                .map(part -> CompletedPart.builder().partNumber(part.getPartNumber()).eTag(part.getETag()).build())
+                .toList();
+
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build());
+    }
 
-        return presignedRequest.url().toString();
+    @Override
+    public void abortMultipartUpload(String bucketName, String key, String uploadId) {
+        s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .build());
+    }
+
+    @Override
+    public S3ObjectDetails getObjectDetails(String bucketName, String key) {
+        HeadObjectResponse response = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+
+        String objectUrl = "https://" + bucketName + ".s3.amazonaws.com/" + key;
+        String objectName = key.substring(key.indexOf('_') + 1);
+        return new S3ObjectDetails(objectName, objectUrl, key, response.contentType(), response.contentLength(),
+                response.lastModified().toString(), response.eTag(), null);
+    }
+
+    @Override
+    public String generatePresignedDownloadUrl(String bucketName, String key, String fileName) {
+        // S3 sends the same attachment header the proxied download would have sent
+        return s3UrlPresigner.presignGet(bucketName, key, downloadUrlValidity, "attachment; filename=\"" + fileName + "\"");
     }
-}
\ No newline at end of file
+}
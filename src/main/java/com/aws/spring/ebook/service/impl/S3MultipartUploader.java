@@ -0,0 +1,136 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.S3UploadResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Component
+@Slf4j
+public class S3MultipartUploader {
+
+    private final S3Client s3Client;
+    private final ExecutorService s3UploadExecutor;
+    private final int partSize;
+    private final int maxConcurrency;
+
+    public S3MultipartUploader(S3Client s3Client,
+                               @Qualifier("s3UploadExecutor") ExecutorService s3UploadExecutor,
+                               @Value("${aws.s3.upload.part-size:8MB}") DataSize partSize,
+                               @Value("${aws.s3.upload.max-concurrency:4}") int maxConcurrency) {
+        this.s3Client = s3Client;
+        this.s3UploadExecutor = s3UploadExecutor;
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public S3UploadResult upload(String bucketName, String key, InputStream inputStream, String contentType) throws IOException {
+        byte[] firstPart = inputStream.readNBytes(partSize);
+
+        // Anything smaller than one part goes up as a single PUT with an exact content length
+        if (firstPart.length < partSize) {
+            PutObjectResponse response = s3Client.putObject(PutObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .contentType(contentType)
+                            .build(),
+                    RequestBody.fromBytes(firstPart));
+            return new S3UploadResult(key, response.eTag(), firstPart.length);
+        }
+
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build()).uploadId();
+
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Caps the part buffers held in memory at maxConcurrency (plus the one being read)
+        Semaphore inFlight = new Semaphore(maxConcurrency);
+        long contentLength = 0;
+
+        try {
+            byte[] part = firstPart;
+            int partNumber = 1;
+            while (part.length > 0 && failure.get() == null) {
+                inFlight.acquire();
+                parts.add(uploadPart(bucketName, key, uploadId, partNumber++, part, inFlight, failure));
+                contentLength += part.length;
+                part = inputStream.readNBytes(partSize);
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> future : parts) {
+                completedParts.add(future.join());
+            }
+
+            CompleteMultipartUploadResponse response = s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+            return new S3UploadResult(key, response.eTag(), contentLength);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(bucketName, key, uploadId, parts);
+            throw new IOException("Interrupted while uploading " + key, e);
+        } catch (CompletionException e) {
+            abort(bucketName, key, uploadId, parts);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (IOException | RuntimeException e) {
+            abort(bucketName, key, uploadId, parts);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(String bucketName, String key, String uploadId, int partNumber,
+                                                        byte[] data, Semaphore inFlight, AtomicReference<Throwable> failure) {
+        return CompletableFuture.supplyAsync(() -> {
+            UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength((long) data.length)
+                            .build(),
+                    RequestBody.fromBytes(data));
+            return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+        }, s3UploadExecutor).whenComplete((completedPart, error) -> {
+            if (error != null) {
+                failure.compareAndSet(null, error);
+            }
+            inFlight.release();
+        });
+    }
+
+    private void abort(String bucketName, String key, String uploadId, List<CompletableFuture<CompletedPart>> parts) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            // Abort releases the storage of every part uploaded so far
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            log.warn("Failed to abort multipart upload {} for {}", uploadId, key, e);
+        }
+    }
+}
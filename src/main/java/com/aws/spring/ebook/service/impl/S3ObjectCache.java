@@ -0,0 +1,253 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded on-disk copy of hot S3 objects, so repeat downloads are served from local files instead of S3
+@Component
+@Slf4j
+public class S3ObjectCache {
+
+    // Misses are remembered this long when deciding whether an object is downloaded often enough to cache
+    private static final Duration MISS_WINDOW = Duration.ofMinutes(10);
+    private static final int MAX_TRACKED_MISSES = 10_000;
+
+    private final S3Client s3Client;
+    private final S3RangedDownloader s3RangedDownloader;
+    private final ExecutorService s3CacheFillExecutor;
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxObjectSize;
+    private final Duration revalidateAfter;
+    private final int fillAfterMisses;
+    private final AsyncCache<String, Entry> cache;
+    private final Cache<String, AtomicInteger> recentMisses;
+    // Makes every fill's file name unique, so deleting an evicted copy never hits its successor
+    private final AtomicLong fillSequence = new AtomicLong();
+
+    public S3ObjectCache(S3Client s3Client,
+                         S3RangedDownloader s3RangedDownloader,
+                         @Qualifier("s3CacheFillExecutor") ExecutorService s3CacheFillExecutor,
+                         MeterRegistry meterRegistry,
+                         @Value("${aws.s3.cache.enabled:false}") boolean enabled,
+                         @Value("${aws.s3.cache.directory:${java.io.tmpdir}/ebook-file-cache}") Path directory,
+                         @Value("${aws.s3.cache.max-size:1GB}") DataSize maxSize,
+                         @Value("${aws.s3.cache.max-object-size:256MB}") DataSize maxObjectSize,
+                         @Value("${aws.s3.cache.revalidate-after:1m}") Duration revalidateAfter,
+                         @Value("${aws.s3.cache.fill-after-misses:2}") int fillAfterMisses) throws IOException {
+        this.s3Client = s3Client;
+        this.s3RangedDownloader = s3RangedDownloader;
+        this.s3CacheFillExecutor = s3CacheFillExecutor;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxObjectSize = maxObjectSize.toBytes();
+        this.revalidateAfter = revalidateAfter;
+        this.fillAfterMisses = Math.max(1, fillAfterMisses);
+        // Weighed in KB so the byte budget fits Caffeine's int weights; eviction is W-TinyLFU, which keeps
+        // frequently downloaded files over ones that were fetched once
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxSize.toBytes() / 1024))
+                .weigher((String cacheKey, Entry entry) -> entry.object() == null
+                        ? 1 : (int) Math.min(Integer.MAX_VALUE, (entry.object().getContentLength() + 1023) / 1024))
+                .removalListener((String cacheKey, Entry entry, RemovalCause cause) -> {
+                    if (entry != null && entry.object() != null) {
+                        deleteQuietly(entry.object().getPath());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "s3Objects");
+        this.recentMisses = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_MISSES)
+                .expireAfterWrite(MISS_WINDOW)
+                .build();
+
+        if (enabled) {
+            // The index lives in memory only, so whatever an earlier process left behind is unreachable
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory)) {
+                leftovers.forEach(this::deleteQuietly);
+            }
+        }
+    }
+
+    // Local copy of the current object, or null when caching is off, the object is too large or not cached yet, in
+    // which case the caller streams from S3 as before. Never waits for a fill: with fillOnMiss, a miss only starts one
+    // in the background once the object has missed fillAfterMisses times, so one-off downloads don't evict hot files
+    public CachedS3Object get(String bucketName, String key, boolean fillOnMiss) {
+        if (!enabled) {
+            return null;
+        }
+
+        String cacheKey = bucketName + "/" + key;
+        CompletableFuture<Entry> cached = cache.getIfPresent(cacheKey);
+        if (cached != null) {
+            if (!cached.isDone() || cached.isCompletedExceptionally()) {
+                // Still filling; this request streams from S3 alongside it
+                return null;
+            }
+            Entry entry = cached.join();
+            if (entry.object() == null ? isFresh(entry) : isCurrent(bucketName, key, entry)) {
+                return entry.object();
+            }
+            // Only drop the entry we checked; a concurrent caller may already have replaced it
+            cache.asMap().remove(cacheKey, cached);
+        }
+
+        if (fillOnMiss && admit(cacheKey)) {
+            fillInBackground(bucketName, key, cacheKey);
+        }
+        return null;
+    }
+
+    public void invalidate(String bucketName, String key) {
+        cache.synchronous().invalidate(bucketName + "/" + key);
+    }
+
+    private boolean admit(String cacheKey) {
+        if (fillAfterMisses <= 1) {
+            return true;
+        }
+        int misses = recentMisses.get(cacheKey, ignored -> new AtomicInteger()).incrementAndGet();
+        if (misses < fillAfterMisses) {
+            return false;
+        }
+        recentMisses.invalidate(cacheKey);
+        return true;
+    }
+
+    private void fillInBackground(String bucketName, String key, String cacheKey) {
+        // Through asMap so the lookup in get() stays the only recorded hit or miss; concurrent misses share one fill
+        cache.asMap().computeIfAbsent(cacheKey, ignored -> {
+            CompletableFuture<Entry> fill = CompletableFuture.supplyAsync(() -> fill(bucketName, key), s3CacheFillExecutor);
+            fill.whenComplete((entry, error) -> {
+                if (error != null) {
+                    log.warn("Failed to cache s3://{}/{}", bucketName, key, error instanceof CompletionException ? error.getCause() : error);
+                    cache.asMap().remove(cacheKey, fill);
+                }
+            });
+            return fill;
+        });
+    }
+
+    private boolean isFresh(Entry entry) {
+        return System.nanoTime() - entry.validatedAt() < revalidateAfter.toNanos();
+    }
+
+    private boolean isCurrent(String bucketName, String key, Entry entry) {
+        if (isFresh(entry)) {
+            return true;
+        }
+        try {
+            // A HEAD is enough to learn whether the object changed; the body stays local
+            HeadObjectResponse response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            if (!entry.object().getETag().equals(response.eTag())) {
+                return false;
+            }
+        } catch (S3Exception e) {
+            // Gone or not checkable right now: refetch rather than serve a copy we can't vouch for
+            return false;
+        }
+        entry.revalidated(System.nanoTime());
+        return true;
+    }
+
+    private Entry fill(String bucketName, String key) {
+        try {
+            // Written under a temporary name and renamed once complete, so a listed file is never partial
+            Path temp = Files.createTempFile(directory, "fill-", ".tmp");
+            try {
+                // Large objects arrive as parallel ranges written straight to their offsets in the temp file
+                CachedS3Object downloaded = s3RangedDownloader.downloadToFile(bucketName, key, temp, maxObjectSize);
+                if (downloaded == null) {
+                    // Too large to keep; the marker stops refetching it until revalidation
+                    deleteQuietly(temp);
+                    return new Entry(null, System.nanoTime());
+                }
+
+                Path target = directory.resolve(sha256Hex(bucketName + "/" + key) + "-"
+                        + sha256Hex(downloaded.getETag()).substring(0, 16) + "-" + fillSequence.incrementAndGet());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                downloaded.setPath(target);
+                return new Entry(downloaded, System.nanoTime());
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(temp);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", path, e);
+        }
+    }
+
+    private String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final CachedS3Object object;
+        private volatile long validatedAt;
+
+        private Entry(CachedS3Object object, long validatedAt) {
+            this.object = object;
+            this.validatedAt = validatedAt;
+        }
+
+        CachedS3Object object() {
+            return object;
+        }
+
+        long validatedAt() {
+            return validatedAt;
+        }
+
+        void revalidated(long now) {
+            validatedAt = now;
+        }
+    }
+}
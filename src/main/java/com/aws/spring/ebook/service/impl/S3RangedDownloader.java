@@ -0,0 +1,312 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.CachedS3Object;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Downloads large objects as concurrent byte-range GETs, since one GetObject stream uses only part of the bandwidth
+@Component
+@Slf4j
+public class S3RangedDownloader {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final S3Client s3Client;
+    private final ExecutorService s3DownloadExecutor;
+    private final int partSize;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+
+    public S3RangedDownloader(S3Client s3Client,
+                              @Qualifier("s3DownloadExecutor") ExecutorService s3DownloadExecutor,
+                              @Value("${aws.s3.download.part-size:8MB}") DataSize partSize,
+                              @Value("${aws.s3.download.max-concurrency:8}") int maxConcurrency,
+                              @Value("${aws.s3.download.max-attempts:3}") int maxAttempts) {
+        this.s3Client = s3Client;
+        this.s3DownloadExecutor = s3DownloadExecutor;
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.maxConcurrency = maxConcurrency;
+        this.maxAttempts = maxAttempts;
+    }
+
+    // Writes the object into target with positional writes; returns null (and leaves target untouched) when it is
+    // larger than sizeLimit
+    public CachedS3Object downloadToFile(String bucketName, String key, Path target, long sizeLimit) throws IOException {
+        List<CompletableFuture<Void>> ranges = new ArrayList<>();
+        GetObjectResponse response;
+        long totalLength;
+        // The probe is released on every path, including a failure to open or size the target file
+        try (ResponseInputStream<GetObjectResponse> probe = probe(bucketName, key)) {
+            response = probe.response();
+            totalLength = totalLength(response);
+            if (totalLength > sizeLimit) {
+                probe.abort();
+                return null;
+            }
+
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (totalLength > 0) {
+                    // Sizing the file up front lets every range write straight to its offset
+                    channel.write(ByteBuffer.allocate(1), totalLength - 1);
+                }
+                copy(probe, channel, 0);
+                probe.close();
+
+                // Same window as the upload side: at most maxConcurrency ranges of this object in flight
+                Semaphore inFlight = new Semaphore(maxConcurrency);
+                AtomicBoolean failed = new AtomicBoolean();
+                String eTag = response.eTag();
+                for (long start = partSize; start < totalLength && !failed.get(); start += partSize) {
+                    long end = Math.min(start + partSize, totalLength) - 1;
+                    inFlight.acquire();
+                    long rangeStart = start;
+                    ranges.add(CompletableFuture.runAsync(() -> fetchRange(bucketName, key, eTag, rangeStart, end, channel),
+                            s3DownloadExecutor).whenComplete((result, error) -> {
+                                if (error != null) {
+                                    failed.set(true);
+                                }
+                                inFlight.release();
+                            }));
+                }
+                CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new)).join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ranges.forEach(range -> range.cancel(true));
+            throw new InterruptedIOException("Interrupted while downloading " + key);
+        } catch (CompletionException e) {
+            ranges.forEach(range -> range.cancel(true));
+            throw unwrap(e);
+        }
+
+        return new CachedS3Object(target, response.eTag(), response.lastModified(), totalLength, response.contentType());
+    }
+
+    // Reads the object in order while up to maxConcurrency ranges are fetched ahead into a reorder buffer
+    public InputStream openStream(String bucketName, String key) throws IOException {
+        ResponseInputStream<GetObjectResponse> probe = probe(bucketName, key);
+        byte[] firstPart;
+        try (probe) {
+            firstPart = probe.readAllBytes();
+        }
+        long totalLength = totalLength(probe.response());
+        return new ReorderingInputStream(bucketName, key, probe.response().eTag(), firstPart, totalLength);
+    }
+
+    private ResponseInputStream<GetObjectResponse> probe(String bucketName, String key) {
+        // The first range doubles as the request that tells us the object's length and ETag
+        try {
+            return s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range("bytes=0-" + (partSize - 1))
+                    .build());
+        } catch (S3Exception e) {
+            if (e.statusCode() != 416) {
+                throw e;
+            }
+            // Empty objects have no byte 0 to ask for
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build());
+        }
+    }
+
+    private long totalLength(GetObjectResponse response) {
+        String contentRange = response.contentRange();
+        // Format: "bytes <start>-<end>/<total>"; absent when S3 served the whole object
+        return contentRange == null ? response.contentLength()
+                : Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1));
+    }
+
+    private void fetchRange(String bucketName, String key, String eTag, long start, long end, FileChannel channel) {
+        for (int attempt = 1; ; attempt++) {
+            try (ResponseInputStream<GetObjectResponse> range = getRange(bucketName, key, eTag, start, end)) {
+                // A retry simply overwrites whatever the failed attempt already wrote
+                copy(range, channel, start);
+                return;
+            } catch (IOException | SdkException e) {
+                retryOrThrow(key, start, end, attempt, e);
+            }
+        }
+    }
+
+    private byte[] fetchRange(String bucketName, String key, String eTag, long start, long end) {
+        for (int attempt = 1; ; attempt++) {
+            try (ResponseInputStream<GetObjectResponse> range = getRange(bucketName, key, eTag, start, end)) {
+                return range.readAllBytes();
+            } catch (IOException | SdkException e) {
+                retryOrThrow(key, start, end, attempt, e);
+            }
+        }
+    }
+
+    private ResponseInputStream<GetObjectResponse> getRange(String bucketName, String key, String eTag, long start, long end) {
+        // Pinned to the probed ETag, so an object replaced mid-download fails instead of mixing two versions
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .ifMatch(eTag)
+                .build());
+    }
+
+    private void retryOrThrow(String key, long start, long end, int attempt, Exception e) {
+        if (!isRetryable(e) || attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+            throw e instanceof RuntimeException runtime ? runtime : new CompletionException(e);
+        }
+        log.debug("Retrying bytes {}-{} of {} after attempt {} failed: {}", start, end, key, attempt, e.toString());
+        try {
+            Thread.sleep(Math.min(100L << attempt, 2000L));
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(new InterruptedIOException("Interrupted while retrying " + key));
+        }
+    }
+
+    // Only transient failures are retried: throttling, 5xx and broken connections. A 403, 404 or 412 (the object
+    // changed under its pinned ETag) fails the same way on every attempt
+    private boolean isRetryable(Exception e) {
+        if (e instanceof IOException) {
+            return true;
+        }
+        if (e instanceof S3Exception s3Exception) {
+            return s3Exception.isThrottlingException() || s3Exception.statusCode() >= 500;
+        }
+        return e instanceof SdkClientException && e.getCause() instanceof IOException;
+    }
+
+    private void copy(InputStream in, FileChannel channel, long position) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk, position);
+            }
+        }
+    }
+
+    private IOException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CompletionException nested && nested.getCause() != null) {
+            cause = nested.getCause();
+        }
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        return new IOException(cause);
+    }
+
+    private final class ReorderingInputStream extends InputStream {
+        private final String bucketName;
+        private final String key;
+        private final String eTag;
+        private final long totalLength;
+        // Ranges fetched ahead of the reader, in object order; completed ones wait here until they are read
+        private final List<CompletableFuture<byte[]>> pending = new ArrayList<>();
+        private long nextStart;
+        private InputStream current;
+        private boolean closed;
+
+        private ReorderingInputStream(String bucketName, String key, String eTag, byte[] firstPart, long totalLength) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.eTag = eTag;
+            this.totalLength = totalLength;
+            this.current = new ByteArrayInputStream(firstPart);
+            this.nextStart = firstPart.length;
+            while (pending.size() < maxConcurrency && scheduleNext()) {
+                // Fill the window
+            }
+        }
+
+        private boolean scheduleNext() {
+            if (nextStart >= totalLength) {
+                return false;
+            }
+            long start = nextStart;
+            long end = Math.min(start + partSize, totalLength) - 1;
+            nextStart = end + 1;
+            pending.add(CompletableFuture.supplyAsync(() -> fetchRange(bucketName, key, eTag, start, end), s3DownloadExecutor));
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                int read = current.read(buffer, offset, length);
+                if (read != -1) {
+                    return read;
+                }
+                if (pending.isEmpty()) {
+                    return -1;
+                }
+                current = new ByteArrayInputStream(next());
+            }
+        }
+
+        private byte[] next() throws IOException {
+            CompletableFuture<byte[]> range = pending.remove(0);
+            // Reading a range frees its slot in the window for the next one
+            scheduleNext();
+            try {
+                return range.join();
+            } catch (CompletionException e) {
+                close();
+                throw unwrap(e);
+            } catch (CancellationException e) {
+                throw new IOException("Download of " + key + " was cancelled", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            pending.forEach(range -> range.cancel(true));
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+
+import java.time.Duration;
+
+@Component
+public class S3UrlPresigner {
+
+    private final S3Presigner s3Presigner;
+    private final Cache<PresignKey, String> cache;
+
+    public S3UrlPresigner(S3Presigner s3Presigner,
+                          MeterRegistry meterRegistry,
+                          @Value("${aws.s3.presign.cache-max-size:10000}") long maxSize,
+                          @Value("${aws.s3.presign.reuse-fraction:0.5}") double reuseFraction) {
+        this.s3Presigner = s3Presigner;
+        // A URL is handed out again only during the first reuseFraction of its validity, so every client
+        // still gets at least the rest of the window to start its download
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<PresignKey, String>() {
+                    @Override
+                    public long expireAfterCreate(PresignKey key, String url, long currentTime) {
+                        return (long) (key.validity().toNanos() * reuseFraction);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(PresignKey key, String url, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, url, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(PresignKey key, String url, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "presignedUrls");
+    }
+
+    // contentDisposition is optional and makes S3 answer with that Content-Disposition header
+    public String presignGet(String bucketName, String key, Duration validity, String contentDisposition) {
+        return cache.get(new PresignKey(bucketName, key, validity, contentDisposition), this::signGet);
+    }
+
+    // Upload URLs are single-use in practice, so they are signed fresh instead of cached
+    public String presignPut(String bucketName, String key, String contentType, Duration validity) {
+        PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(validity)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .build();
+
+        return s3Presigner.presignPutObject(presignRequest).url().toString();
+    }
+
+    public String presignUploadPart(String bucketName, String key, String uploadId, int partNumber, Duration validity) {
+        UploadPartPresignRequest presignRequest = UploadPartPresignRequest.builder()
+                .signatureDuration(validity)
+                .uploadPartRequest(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .build())
+                .build();
+
+        return s3Presigner.presignUploadPart(presignRequest).url().toString();
+    }
+
+    private String signGet(PresignKey presignKey) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(presignKey.bucketName())
+                .key(presignKey.key())
+                .responseContentDisposition(presignKey.contentDisposition())
+                .build();
+
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(presignKey.validity())
+                .getObjectRequest(getObjectRequest)
+                .build();
+
+        return s3Presigner.presignGetObject(presignRequest).url().toString();
+    }
+
+    private record PresignKey(String bucketName, String key, Duration validity, String contentDisposition) {
+    }
+}
@@ -0,0 +1,204 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.entity.Ebook;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@Slf4j
+public class SnsDigestNotifier implements SmartLifecycle {
+
+    // PublishBatch accepts at most 10 entries
+    private static final int MAX_BATCH = 10;
+
+    private final SnsClient snsClient;
+    private final String snsTopicArn;
+    private final Duration window;
+    private final int maxEbooksPerDigest;
+    private final int maxAttempts;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<PendingAnnouncement> pending;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter digestCounter;
+    private final Counter droppedCounter;
+
+    private ScheduledExecutorService worker;
+
+    public SnsDigestNotifier(SnsClient snsClient,
+                             MeterRegistry meterRegistry,
+                             @Value("${aws.snsTopicArn}") String snsTopicArn,
+                             @Value("${aws.sns.digest.window:1m}") Duration window,
+                             @Value("${aws.sns.digest.max-ebooks-per-digest:50}") int maxEbooksPerDigest,
+                             @Value("${aws.sns.digest.buffer-size:10000}") int bufferSize,
+                             @Value("${aws.sns.digest.max-attempts:3}") int maxAttempts,
+                             @Value("${aws.sns.digest.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.snsClient = snsClient;
+        this.snsTopicArn = snsTopicArn;
+        this.window = window;
+        this.maxEbooksPerDigest = maxEbooksPerDigest;
+        this.maxAttempts = maxAttempts;
+        this.shutdownTimeout = shutdownTimeout;
+        this.pending = new ArrayBlockingQueue<>(bufferSize);
+        this.digestCounter = Counter.builder("sns.digest.published").description("Digests published").register(meterRegistry);
+        this.droppedCounter = Counter.builder("sns.digest.dropped").description("New-eBook events shed or given up on").register(meterRegistry);
+        Gauge.builder("sns.digest.pending", pending, BlockingQueue::size)
+                .description("New-eBook events waiting for the next digest")
+                .register(meterRegistry);
+    }
+
+    // Never blocks the caller; when the buffer is full the announcement is dropped
+    public void notifyNewEbook(Ebook ebook) {
+        Ebook snapshot = new Ebook(ebook.getEbookId(), ebook.getTitle(), ebook.getAuthor(), ebook.getGenre(), ebook.getUrl(), ebook.getVersion(),
+                ebook.getContentHash());
+        if (!pending.offer(new PendingAnnouncement(snapshot, 1))) {
+            droppedCounter.increment();
+            log.warn("SNS digest buffer full, dropping announcement for ebook {}", ebook.getEbookId());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            worker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sns-digest-"));
+            worker.scheduleWithFixedDelay(this::flush, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+
+        worker.shutdown();
+        try {
+            worker.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Announce whatever arrived during the last window
+        flush();
+    }
+
+    // Lower phases stop later: this waits for the web server's graceful shutdown, so announcements made by draining
+    // requests still reach the final flush
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void flush() {
+        try {
+            List<PendingAnnouncement> announcements = new ArrayList<>();
+            pending.drainTo(announcements);
+            if (announcements.isEmpty()) {
+                return;
+            }
+
+            List<List<PendingAnnouncement>> digests = new ArrayList<>();
+            for (int from = 0; from < announcements.size(); from += maxEbooksPerDigest) {
+                digests.add(announcements.subList(from, Math.min(from + maxEbooksPerDigest, announcements.size())));
+            }
+            for (int from = 0; from < digests.size(); from += MAX_BATCH) {
+                List<List<PendingAnnouncement>> batch = digests.subList(from, Math.min(from + MAX_BATCH, digests.size()));
+                try {
+                    publish(batch);
+                } catch (RuntimeException e) {
+                    log.error("Error publishing SNS digest", e);
+                    batch.forEach(this::requeue);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Error preparing SNS digest", e);
+        }
+    }
+
+    private void publish(List<List<PendingAnnouncement>> digests) {
+        List<PublishBatchRequestEntry> entries = new ArrayList<>(digests.size());
+        for (int i = 0; i < digests.size(); i++) {
+            List<Ebook> digest = digests.get(i).stream().map(PendingAnnouncement::ebook).toList();
+            entries.add(PublishBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .subject(digest.size() == 1 ? "New eBook Available" : digest.size() + " New eBooks Available")
+                    .message(digestMessage(digest))
+                    .build());
+        }
+
+        PublishBatchRequest publishBatchRequest = PublishBatchRequest.builder()
+                .topicArn(snsTopicArn)
+                .publishBatchRequestEntries(entries)
+                .build();
+
+        PublishBatchResponse response = snsClient.publishBatch(publishBatchRequest);
+        digestCounter.increment(response.successful().size());
+        log.info("Published {} digests", response.successful().size());
+
+        for (BatchResultErrorEntry failure : response.failed()) {
+            List<PendingAnnouncement> digest = digests.get(Integer.parseInt(failure.id()));
+            log.error("Failed to publish digest of {} ebooks: {} {}", digest.size(), failure.code(), failure.message());
+            if (!Boolean.TRUE.equals(failure.senderFault())) {
+                requeue(digest);
+            } else {
+                droppedCounter.increment(digest.size());
+            }
+        }
+    }
+
+    private void requeue(List<PendingAnnouncement> digest) {
+        // Put the announcements back so they go out with the next window, until they run out of attempts; a full
+        // buffer drops the retry rather than a newer announcement
+        for (PendingAnnouncement announcement : digest) {
+            if (announcement.attempts() >= maxAttempts
+                    || !pending.offer(new PendingAnnouncement(announcement.ebook(), announcement.attempts() + 1))) {
+                droppedCounter.increment();
+                log.error("Giving up on SNS announcement for ebook {} after {} attempts",
+                        announcement.ebook().getEbookId(), announcement.attempts());
+            }
+        }
+    }
+
+    private String digestMessage(List<Ebook> digest) {
+        if (digest.size() == 1) {
+            Ebook ebook = digest.get(0);
+            return "New eBook Available: '" + ebook.getTitle() + "' by " + ebook.getAuthor() +
+                    ". Check it out at: " + ebook.getUrl();
+        }
+
+        StringBuilder message = new StringBuilder(digest.size() + " new eBooks are available:\n");
+        for (Ebook ebook : digest) {
+            message.append("- '").append(ebook.getTitle()).append("' by ").append(ebook.getAuthor())
+                    .append(": ").append(ebook.getUrl()).append('\n');
+        }
+        return message.toString();
+    }
+
+    private record PendingAnnouncement(Ebook ebook, int attempts) {
+    }
+}
@@ -0,0 +1,248 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.EbookSqsMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@Slf4j
+public class SqsBatchProducer implements SmartLifecycle {
+
+    // SendMessageBatch accepts at most 10 entries
+    private static final int MAX_BATCH = 10;
+
+    private final SqsAsyncClient sqsAsyncClient;
+    private final ObjectMapper objectMapper;
+    private final String sqsQueueUrl;
+    private final Duration linger;
+    private final boolean blockWhenFull;
+    private final Duration blockTimeout;
+    private final int maxAttempts;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<PendingMessage> buffer;
+    private final Semaphore inFlightBatches;
+    // Sends not yet answered; their failed entries come back into the buffer as retries
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+    private final Counter retriedCounter;
+
+    private Thread flusher;
+
+    public SqsBatchProducer(SqsAsyncClient sqsAsyncClient,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${aws.sqsQueueUrl}") String sqsQueueUrl,
+                            @Value("${aws.sqs.producer.buffer-size:10000}") int bufferSize,
+                            @Value("${aws.sqs.producer.linger:100ms}") Duration linger,
+                            @Value("${aws.sqs.producer.max-in-flight-batches:8}") int maxInFlightBatches,
+                            @Value("${aws.sqs.producer.block-when-full:false}") boolean blockWhenFull,
+                            @Value("${aws.sqs.producer.block-timeout:1s}") Duration blockTimeout,
+                            @Value("${aws.sqs.producer.max-attempts:3}") int maxAttempts,
+                            @Value("${aws.sqs.producer.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.sqsAsyncClient = sqsAsyncClient;
+        this.objectMapper = objectMapper;
+        this.sqsQueueUrl = sqsQueueUrl;
+        this.linger = linger;
+        this.blockWhenFull = blockWhenFull;
+        this.blockTimeout = blockTimeout;
+        this.maxAttempts = maxAttempts;
+        this.shutdownTimeout = shutdownTimeout;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
+        this.sentCounter = Counter.builder("sqs.producer.sent").description("Messages accepted by SQS").register(meterRegistry);
+        this.droppedCounter = Counter.builder("sqs.producer.dropped").description("Messages shed or given up on").register(meterRegistry);
+        this.retriedCounter = Counter.builder("sqs.producer.retried").description("Messages re-queued after a failed send").register(meterRegistry);
+        Gauge.builder("sqs.producer.buffered", buffer, BlockingQueue::size)
+                .description("Messages waiting to be sent")
+                .register(meterRegistry);
+    }
+
+    // Queues the message for the next batch; returns false when the buffer is full and the message was shed
+    public boolean send(EbookSqsMessage message) {
+        PendingMessage pending = new PendingMessage(convertToJson(message), 1);
+        boolean accepted;
+        try {
+            accepted = blockWhenFull
+                    ? buffer.offer(pending, blockTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                    : buffer.offer(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (!accepted) {
+            droppedCounter.increment();
+            log.warn("SQS producer buffer full, dropping message for ebook {}", message.getEbookId());
+        }
+        return accepted;
+    }
+
+    @Override
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            flusher = new Thread(this::flushLoop, "sqs-producer");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+
+        try {
+            // The flusher drains what is still buffered, and waits out in-flight sends and their retries, before it exits
+            flusher.join(linger.toMillis() + shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("SQS producer stopped with {} buffered messages and {} batches in flight", buffer.size(), inFlight.size());
+        }
+    }
+
+    // Stops after the web server (a lower phase stops later), so requests still draining can queue their messages;
+    // the SQS client itself is closed only after every lifecycle bean has stopped
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void flushLoop() {
+        while (running.get() || !buffer.isEmpty() || !inFlight.isEmpty()) {
+            try {
+                List<PendingMessage> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    inFlightBatches.acquire();
+                    sendBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Error flushing SQS producer buffer", e);
+            }
+        }
+    }
+
+    private List<PendingMessage> nextBatch() throws InterruptedException {
+        List<PendingMessage> batch = new ArrayList<>(MAX_BATCH);
+        PendingMessage first = buffer.poll(linger.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+
+        // Linger so a burst fills the batch instead of going out as ten single-entry requests
+        long deadline = System.nanoTime() + linger.toNanos();
+        while (batch.size() < MAX_BATCH) {
+            long remaining = deadline - System.nanoTime();
+            PendingMessage next = remaining > 0 ? buffer.poll(remaining, TimeUnit.NANOSECONDS) : buffer.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void sendBatch(List<PendingMessage> batch) {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .messageBody(batch.get(i).body())
+                    .build());
+        }
+
+        SendMessageBatchRequest request = SendMessageBatchRequest.builder()
+                .queueUrl(sqsQueueUrl)
+                .entries(entries)
+                .build();
+
+        CompletableFuture<SendMessageBatchResponse> send = sqsAsyncClient.sendMessageBatch(request);
+        inFlight.add(send);
+        send.whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    log.error("Error sending batch of {} messages to SQS", batch.size(), error);
+                    batch.forEach(this::retry);
+                } else {
+                    handleResponse(batch, response);
+                }
+            } finally {
+                // Removed only after retries are buffered, so the flusher never sees both empty in between
+                inFlight.remove(send);
+                inFlightBatches.release();
+            }
+        });
+    }
+
+    private void handleResponse(List<PendingMessage> batch, SendMessageBatchResponse response) {
+        sentCounter.increment(response.successful().size());
+        for (BatchResultErrorEntry failure : response.failed()) {
+            PendingMessage pending = batch.get(Integer.parseInt(failure.id()));
+            if (Boolean.TRUE.equals(failure.senderFault())) {
+                // Sender faults (e.g. oversized body) will fail the same way again
+                droppedCounter.increment();
+                log.error("SQS rejected message: {} {}", failure.code(), failure.message());
+            } else {
+                retry(pending);
+            }
+        }
+    }
+
+    private void retry(PendingMessage pending) {
+        if (pending.attempts() >= maxAttempts || !buffer.offer(new PendingMessage(pending.body(), pending.attempts() + 1))) {
+            droppedCounter.increment();
+            log.error("Giving up on SQS message after {} attempts: {}", pending.attempts(), pending.body());
+            return;
+        }
+        retriedCounter.increment();
+    }
+
+    private String convertToJson(Object object) {
+        try {
+            return objectMapper.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error converting to JSON", e);
+        }
+    }
+
+    private record PendingMessage(String body, int attempts) {
+    }
+}
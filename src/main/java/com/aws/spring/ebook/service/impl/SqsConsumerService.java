@@ -2,68 +2,317 @@ package com.aws.spring.ebook.service.impl;
 
 import com.aws.spring.ebook.dto.EbookSqsMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
-import software.amazon.awssdk.services.sqs.model.Message;
-import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
-import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class SqsConsumerService {
+public class SqsConsumerService implements SmartLifecycle {
+
+    // SQS batch APIs accept at most 10 entries
+    private static final int MAX_BATCH = 10;
 
     private final SqsClient sqsClient;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
     @Value("${aws.sqsQueueUrl}")
     private String sqsQueueUrl;
 
-    // Poll every 5 seconds (adjust timing as needed)
-    @Scheduled(fixedRate = 5000)
-    public void pollSqsQueue() {
+    @Value("${aws.sqs.consumer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aws.sqs.consumer.pollers:2}")
+    private int pollers;
+
+    @Value("${aws.sqs.consumer.workers:16}")
+    private int workers;
+
+    @Value("${aws.sqs.consumer.wait-time:20s}")
+    private Duration waitTime;
+
+    @Value("${aws.sqs.consumer.visibility-timeout:30s}")
+    private Duration visibilityTimeout;
+
+    @Value("${aws.sqs.consumer.ack-interval:500ms}")
+    private Duration ackInterval;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Map<String, InFlightMessage> inFlight = new ConcurrentHashMap<>();
+    private final Queue<Message> pendingAcks = new ConcurrentLinkedQueue<>();
+
+    private Semaphore capacity;
+    private ExecutorService pollerExecutor;
+    private ExecutorService workerExecutor;
+    private ScheduledExecutorService housekeeping;
+
+    private Counter receivedCounter;
+    private Counter failedCounter;
+    private Counter deletedCounter;
+    private Timer processingTimer;
+    private DistributionSummary lagSummary;
+
+    @Override
+    public void start() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+
+        registerMetrics();
+
+        // One permit per message a worker can own; pollers only ask SQS for as many messages as there are free permits
+        capacity = new Semaphore(workers * 2);
+        workerExecutor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("sqs-worker-"));
+        pollerExecutor = Executors.newFixedThreadPool(pollers, new CustomizableThreadFactory("sqs-poller-"));
+        housekeeping = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sqs-housekeeping-"));
+
+        for (int i = 0; i < pollers; i++) {
+            pollerExecutor.execute(this::pollLoop);
+        }
+        housekeeping.scheduleWithFixedDelay(this::flushAcks, ackInterval.toMillis(), ackInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long heartbeat = Math.max(1, visibilityTimeout.toMillis() / 3);
+        housekeeping.scheduleWithFixedDelay(this::extendVisibility, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+
+        log.info("Started SQS consumer with {} pollers and {} workers", pollers, workers);
+    }
+
+    @Override
+    public void stop() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+
+        pollerExecutor.shutdownNow();
+        workerExecutor.shutdown();
+        try {
+            workerExecutor.awaitTermination(visibilityTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        housekeeping.shutdownNow();
+        // Acknowledge whatever finished during shutdown so it is not redelivered
+        flushAcks();
+        log.info("Stopped SQS consumer");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void pollLoop() {
+        while (running.get()) {
+            int permits = 0;
+            try {
+                // Backpressure: block until a worker slot frees up, then take whatever else is free up to one batch
+                capacity.acquire();
+                permits = 1;
+                while (permits < MAX_BATCH && capacity.tryAcquire()) {
+                    permits++;
+                }
+
+                List<Message> messages = receive(permits);
+                capacity.release(permits - messages.size());
+                permits = 0;
+
+                for (Message message : messages) {
+                    dispatch(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                capacity.release(permits);
+                return;
+            } catch (RuntimeException e) {
+                capacity.release(permits);
+                if (running.get()) {
+                    log.error("Error polling SQS queue", e);
+                    sleepQuietly(Duration.ofSeconds(1));
+                }
+            }
+        }
+    }
+
+    private List<Message> receive(int maxMessages) {
         ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
                 .queueUrl(sqsQueueUrl)
-                .maxNumberOfMessages(10) // Fetch up to 10 messages at once
-                .waitTimeSeconds(20) // Long polling (adjust based on your needs)
+                .maxNumberOfMessages(maxMessages)
+                .waitTimeSeconds((int) waitTime.toSeconds()) // Long polling
+                .visibilityTimeout((int) visibilityTimeout.toSeconds())
+                .attributeNamesWithStrings(MessageSystemAttributeName.SENT_TIMESTAMP.toString())
                 .build();
 
         ReceiveMessageResponse response = sqsClient.receiveMessage(receiveMessageRequest);
         List<Message> messages = response.messages();
-        log.info("Received {} messages from SQS queue", messages.size());
-
-        for (Message message : messages) {
-            processMessage(message);
-            deleteMessageFromQueue(message);
+        if (!messages.isEmpty()) {
+            log.debug("Received {} messages from SQS queue", messages.size());
+            receivedCounter.increment(messages.size());
         }
+        return messages;
+    }
+
+    private void dispatch(Message message) {
+        recordLag(message);
+        inFlight.put(message.messageId(), new InFlightMessage(message, System.nanoTime() + visibilityTimeout.toNanos()));
+
+        workerExecutor.execute(() -> {
+            try {
+                boolean processed = processingTimer.record(() -> processMessage(message));
+                if (processed) {
+                    pendingAcks.add(message);
+                } else {
+                    // Left undeleted and no longer extended, so SQS redelivers it once its visibility window ends and
+                    // the queue's redrive policy moves it to the dead-letter queue after maxReceiveCount attempts
+                    failedCounter.increment();
+                }
+            } finally {
+                inFlight.remove(message.messageId());
+                capacity.release();
+            }
+        });
     }
 
-    private void processMessage(Message message) {
+    private boolean processMessage(Message message) {
         try {
             log.info("Processing message: {}", message.body());
 
-            ObjectMapper objectMapper = new ObjectMapper();
             EbookSqsMessage ebookSqsMessage = objectMapper.readValue(message.body(), EbookSqsMessage.class);
 
             log.info("Processed Ebook - ID: {}, Title: {}", ebookSqsMessage.getEbookId(), ebookSqsMessage.getTitle());
+            return true;
         } catch (Exception e) {
             log.error("Error processing message: {}", message.body(), e);
+            return false;
+        }
+    }
+
+    private void flushAcks() {
+        try {
+            List<Message> batch = new ArrayList<>(MAX_BATCH);
+            Message message;
+            while ((message = pendingAcks.poll()) != null) {
+                batch.add(message);
+                if (batch.size() == MAX_BATCH) {
+                    deleteMessagesFromQueue(batch);
+                    batch = new ArrayList<>(MAX_BATCH);
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleteMessagesFromQueue(batch);
+            }
+        } catch (RuntimeException e) {
+            log.error("Error acknowledging SQS messages", e);
         }
     }
 
-    private void deleteMessageFromQueue(Message message) {
-        DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest.builder()
+    private void deleteMessagesFromQueue(List<Message> messages) {
+        List<DeleteMessageBatchRequestEntry> entries = messages.stream()
+                .map(message -> DeleteMessageBatchRequestEntry.builder()
+                        .id(message.messageId())
+                        .receiptHandle(message.receiptHandle())
+                        .build())
+                .toList();
+
+        DeleteMessageBatchResponse response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
                 .queueUrl(sqsQueueUrl)
-                .receiptHandle(message.receiptHandle())
-                .build();
-        sqsClient.deleteMessage(deleteMessageRequest);
+                .entries(entries)
+                .build());
+
+        deletedCounter.increment(response.successful().size());
+        for (BatchResultErrorEntry failure : response.failed()) {
+            // The message becomes visible again and is redelivered, which the processing must tolerate anyway
+            log.warn("Failed to delete message {}: {} {}", failure.id(), failure.code(), failure.message());
+        }
+    }
+
+    private void extendVisibility() {
+        try {
+            // Messages still being processed when a third of their visibility window is left get a fresh window
+            long threshold = System.nanoTime() + visibilityTimeout.toNanos() / 3;
+            List<InFlightMessage> expiring = inFlight.values().stream()
+                    .filter(message -> message.visibleUntilNanos < threshold)
+                    .toList();
+
+            for (int from = 0; from < expiring.size(); from += MAX_BATCH) {
+                List<InFlightMessage> batch = expiring.subList(from, Math.min(from + MAX_BATCH, expiring.size()));
+                List<ChangeMessageVisibilityBatchRequestEntry> entries = batch.stream()
+                        .map(message -> ChangeMessageVisibilityBatchRequestEntry.builder()
+                                .id(message.message.messageId())
+                                .receiptHandle(message.message.receiptHandle())
+                                .visibilityTimeout((int) visibilityTimeout.toSeconds())
+                                .build())
+                        .toList();
 
-        log.info("Deleted message with ID: {}", message.messageId());
+                sqsClient.changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+                        .queueUrl(sqsQueueUrl)
+                        .entries(entries)
+                        .build());
+
+                long visibleUntil = System.nanoTime() + visibilityTimeout.toNanos();
+                batch.forEach(message -> message.visibleUntilNanos = visibleUntil);
+                log.debug("Extended visibility of {} slow messages", batch.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Error extending SQS message visibility", e);
+        }
+    }
+
+    private void recordLag(Message message) {
+        // Lag = time the message spent in the queue before we picked it up
+        String sentTimestamp = message.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+        if (sentTimestamp != null) {
+            lagSummary.record(Math.max(0, System.currentTimeMillis() - Long.parseLong(sentTimestamp)));
+        }
+    }
+
+    private void registerMetrics() {
+        receivedCounter = Counter.builder("sqs.consumer.received").description("Messages received").register(meterRegistry);
+        failedCounter = Counter.builder("sqs.consumer.failed").description("Messages whose processing failed").register(meterRegistry);
+        deletedCounter = Counter.builder("sqs.consumer.deleted").description("Messages acknowledged").register(meterRegistry);
+        processingTimer = Timer.builder("sqs.consumer.processing").description("Message processing time").register(meterRegistry);
+        lagSummary = DistributionSummary.builder("sqs.consumer.lag")
+                .description("Time between send and receive")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("sqs.consumer.in-flight", inFlight, Map::size)
+                .description("Messages currently being processed")
+                .register(meterRegistry);
+    }
+
+    private void sleepQuietly(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class InFlightMessage {
+        private final Message message;
+        private volatile long visibleUntilNanos;
+
+        private InFlightMessage(Message message, long visibleUntilNanos) {
+            this.message = message;
+            this.visibleUntilNanos = visibleUntilNanos;
+        }
     }
 }
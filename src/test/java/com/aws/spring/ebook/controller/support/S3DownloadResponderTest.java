@@ -0,0 +1,420 @@
+package com.aws.spring.ebook.controller.support;
+
+import com.aws.spring.ebook.dto.CachedS3Object;
+import com.aws.spring.ebook.dto.S3DownloadOptions;
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3DownloadResponderTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"v1\"";
+    private static final Instant LAST_MODIFIED = Instant.parse("2025-01-01T00:00:00Z");
+
+    private S3DownloadResponder responder;
+    private List<S3DownloadOptions> requests;
+    private int heads;
+
+    @BeforeEach
+    void setUp() {
+        responder = new S3DownloadResponder();
+        ReflectionTestUtils.setField(responder, "bufferSize", 8);
+        requests = new ArrayList<>();
+    }
+
+    @Test
+    void servesWholeObjectWithoutRange() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = responder.download(new HttpHeaders(), "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(CONTENT.length);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(body(response)).isEqualTo(CONTENT);
+        assertThat(requests.get(0).getRange()).isNull();
+    }
+
+    @Test
+    void servesSingleRangeAsPartialContent() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=10-19");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-19/" + CONTENT.length);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(10);
+        assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, 10, 20));
+        assertThat(requests.get(0).getRange()).isEqualTo("bytes=10-19");
+    }
+
+    @Test
+    void resolvesSuffixRange() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=-5");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, CONTENT.length - 5, CONTENT.length));
+    }
+
+    @Test
+    void ignoresMalformedRange() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "pages=1-2");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(response)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void answersUnsatisfiableRangeWith416() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=100-200");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    @Test
+    void servesMultipleRangesAsMultipartByteranges() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-1,5-6");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.parseMediaType("multipart/byteranges"))).isTrue();
+        assertThat(response.getHeaders().getContentType().getParameter("boundary")).isNotBlank();
+        byte[] body = body(response);
+        String text = new String(body, StandardCharsets.US_ASCII);
+        assertThat(text).contains("Content-Range: bytes 0-1/" + CONTENT.length + "\r\n\r\n01");
+        assertThat(text).contains("Content-Range: bytes 5-6/" + CONTENT.length + "\r\n\r\n56");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length);
+        // Later parts are pinned to the version the first part came from
+        assertThat(requests.get(1).getIfMatch()).isEqualTo(ETAG);
+    }
+
+    @Test
+    void dropsUnsatisfiableRangesFromMultiRangeRequests() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=100-200,0-1,5-6");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        String text = new String(body(response), StandardCharsets.US_ASCII);
+        assertThat(text).contains("Content-Range: bytes 0-1/" + CONTENT.length).contains("Content-Range: bytes 5-6/" + CONTENT.length)
+                .doesNotContain("bytes 100-");
+        assertThat(requests).extracting(S3DownloadOptions::getRange).containsExactly("bytes=0-1", "bytes=5-6");
+        assertThat(requests).extracting(S3DownloadOptions::getIfMatch).containsOnly(ETAG);
+    }
+
+    @Test
+    void servesSingleSatisfiableRangeOfMultiRangeRequestWithoutMultipart() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=100-200,30-");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 30-35/" + CONTENT.length);
+        assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, 30, 36));
+    }
+
+    @Test
+    void answers416OnlyWhenNoRangeIsSatisfiable() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=100-200,300-");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + CONTENT.length);
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void sendsWholeObjectWhenMultiRangeIfRangeNoLongerMatches() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-1,5-6");
+        headers.set(HttpHeaders.IF_RANGE, "\"v0\"");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(response)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void singleRangeRequestsNeedNoHead() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-1");
+
+        body(responder.download(headers, "book.pdf", head(), s3()));
+
+        assertThat(heads).isZero();
+    }
+
+    @Test
+    void rejectsOverlappingRangesLargerThanTheObject() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-35,0-35");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + CONTENT.length);
+    }
+
+    @Test
+    void sendsWholeObjectWhenIfRangeNoLongerMatches() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-9");
+        headers.set(HttpHeaders.IF_RANGE, "\"v0\"");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(response)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void servesRangeWhenIfRangeDateEqualsLastModified() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-9");
+        headers.setZonedDateTime(HttpHeaders.IF_RANGE, LAST_MODIFIED.atZone(ZoneOffset.UTC));
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, 0, 10));
+        // The date is compared here, not sent to S3 as a precondition
+        assertThat(requests.get(0).getIfMatch()).isNull();
+    }
+
+    @Test
+    void sendsWholeObjectWhenIfRangeDateDiffersFromLastModified() throws IOException {
+        for (Instant date : List.of(LAST_MODIFIED.plusSeconds(60), LAST_MODIFIED.minusSeconds(60))) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RANGE, "bytes=0-9");
+            headers.setZonedDateTime(HttpHeaders.IF_RANGE, date.atZone(ZoneOffset.UTC));
+
+            ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(body(response)).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void sendsWholeObjectForWeakIfRange() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-9");
+        headers.set(HttpHeaders.IF_RANGE, "W/" + ETAG);
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(response)).isEqualTo(CONTENT);
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void forwardsValidatorsAndRelaysNotModifiedFromS3() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(ETAG);
+        headers.setIfModifiedSince(0);
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", head(), options -> {
+            requests.add(options);
+            throw notModified();
+        });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED)).isEqualTo("Wed, 01 Jan 2025 00:00:00 GMT");
+        assertThat(response.getBody()).isNull();
+        // If-None-Match wins, so If-Modified-Since is not sent along
+        assertThat(requests.get(0).getIfNoneMatch()).isEqualTo(ETAG);
+        assertThat(requests.get(0).getIfModifiedSince()).isNull();
+    }
+
+    @Test
+    void answersNotModifiedFromCachedValidatorsWithoutCallingS3(@TempDir Path directory) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(ETAG);
+        List<Boolean> fills = new ArrayList<>();
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf",
+                fillOnMiss -> {
+                    fills.add(fillOnMiss);
+                    return cached(directory);
+                }, head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(requests).isEmpty();
+        // A conditional request never starts a whole-object fill
+        assertThat(fills).containsExactly(false);
+    }
+
+    @Test
+    void answersNotModifiedFromCachedLastModified(@TempDir Path directory) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfModifiedSince(LAST_MODIFIED.plusSeconds(60).toEpochMilli());
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", fillOnMiss -> cached(directory), head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void servesChangedObjectFromCache(@TempDir Path directory) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"v0\"");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(headers, "book.pdf", fillOnMiss -> cached(directory), head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(body(response)).isEqualTo(CONTENT);
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void servesRangesFromCache(@TempDir Path directory) throws IOException {
+        HttpHeaders partial = new HttpHeaders();
+        partial.set(HttpHeaders.RANGE, "bytes=30-");
+        HttpHeaders unsatisfiable = new HttpHeaders();
+        unsatisfiable.set(HttpHeaders.RANGE, "bytes=100-");
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(partial, "book.pdf", fillOnMiss -> cached(directory), head(), s3());
+        ResponseEntity<StreamingResponseBody> rejected = responder.download(unsatisfiable, "book.pdf", fillOnMiss -> cached(directory), head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 30-35/" + CONTENT.length);
+        assertThat(body(response)).isEqualTo(Arrays.copyOfRange(CONTENT, 30, 36));
+        assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(rejected.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + CONTENT.length);
+        assertThat(requests).isEmpty();
+    }
+
+    @Test
+    void fallsBackToS3WhenCachedFileWasEvicted(@TempDir Path directory) throws IOException {
+        CachedS3Object evicted = cached(directory);
+        Files.delete(evicted.getPath());
+
+        ResponseEntity<StreamingResponseBody> response = responder.download(new HttpHeaders(), "book.pdf", fillOnMiss -> evicted, head(), s3());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(response)).isEqualTo(CONTENT);
+        assertThat(requests).hasSize(1);
+    }
+
+    private Supplier<S3ObjectDetails> head() {
+        return () -> {
+            heads++;
+            return new S3ObjectDetails("book.pdf", "https://bucket/book.pdf", "book.pdf", "application/pdf", CONTENT.length,
+                    LAST_MODIFIED.toString(), ETAG, null);
+        };
+    }
+
+    // Minimal stand-in for GetObject: honours Range, If-Match and returns 416/412 like S3
+    private Function<S3DownloadOptions, ResponseInputStream<GetObjectResponse>> s3() {
+        return options -> {
+            requests.add(options);
+            if (options.getIfMatch() != null && !options.getIfMatch().equals(ETAG)) {
+                throw (S3Exception) S3Exception.builder().statusCode(412).build();
+            }
+            GetObjectResponse.Builder response = GetObjectResponse.builder().eTag(ETAG).lastModified(LAST_MODIFIED);
+            if (options.getRange() == null) {
+                return stream(response.contentLength((long) CONTENT.length).build(), CONTENT);
+            }
+            String spec = options.getRange().substring("bytes=".length());
+            int dash = spec.indexOf('-');
+            int start;
+            int end;
+            if (dash == 0) {
+                start = Math.max(0, CONTENT.length - Integer.parseInt(spec.substring(1)));
+                end = CONTENT.length - 1;
+            } else {
+                start = Integer.parseInt(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? CONTENT.length - 1 : Math.min(CONTENT.length - 1, Integer.parseInt(spec.substring(dash + 1)));
+            }
+            if (start >= CONTENT.length) {
+                throw (S3Exception) S3Exception.builder().statusCode(416).build();
+            }
+            byte[] slice = Arrays.copyOfRange(CONTENT, start, end + 1);
+            return stream(response.contentLength((long) slice.length)
+                    .contentRange("bytes " + start + "-" + end + "/" + CONTENT.length)
+                    .build(), slice);
+        };
+    }
+
+    private S3Exception notModified() {
+        SdkHttpResponse httpResponse = SdkHttpResponse.builder()
+                .statusCode(304)
+                .putHeader(HttpHeaders.ETAG, ETAG)
+                .putHeader(HttpHeaders.LAST_MODIFIED, "Wed, 01 Jan 2025 00:00:00 GMT")
+                .build();
+        return (S3Exception) S3Exception.builder()
+                .statusCode(304)
+                .awsErrorDetails(AwsErrorDetails.builder().sdkHttpResponse(httpResponse).build())
+                .build();
+    }
+
+    private CachedS3Object cached(Path directory) {
+        try {
+            Path file = Files.write(directory.resolve("cached"), CONTENT);
+            return new CachedS3Object(file, ETAG, LAST_MODIFIED, CONTENT.length, "application/pdf");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResponseInputStream<GetObjectResponse> stream(GetObjectResponse response, byte[] bytes) {
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(bytes)));
+    }
+
+    private byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
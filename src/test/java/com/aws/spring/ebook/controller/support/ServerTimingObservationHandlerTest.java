@@ -0,0 +1,53 @@
+package com.aws.spring.ebook.controller.support;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingObservationHandlerTest {
+
+    private ObservationRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ServerTimingObservationHandler());
+    }
+
+    @Test
+    void recordsDescendantsOfTheRequestObservationUnderTheirContextualName() {
+        ServerTiming serverTiming = new ServerTiming();
+        Observation request = Observation.createNotStarted("http.server.requests", registry);
+        request.getContext().put(ServerTiming.class, serverTiming);
+        request.start();
+
+        Observation service = Observation.createNotStarted("ebook.service", registry).parentObservation(request).start();
+        Observation.createNotStarted("aws.sdk.calls", registry)
+                .contextualName("DynamoDb.GetItem")
+                .parentObservation(service)
+                .start()
+                .stop();
+        service.stop();
+        request.stop();
+
+        assertThat(serverTiming.toHeaderValue())
+                .matches("DynamoDb\\.GetItem;dur=\\d+\\.\\d, ebook\\.service;dur=\\d+\\.\\d, total;dur=\\d+\\.\\d");
+    }
+
+    @Test
+    void ignoresObservationsOutsideARequest() {
+        ServerTiming serverTiming = new ServerTiming();
+        Observation request = Observation.createNotStarted("http.server.requests", registry);
+        request.getContext().put(ServerTiming.class, serverTiming);
+        request.start();
+
+        // Not a descendant, e.g. the SQS producer's flush thread
+        Observation.createNotStarted("aws.sdk.calls", registry).start().stop();
+        request.stop();
+
+        assertThat(serverTiming.toHeaderValue()).startsWith("total;");
+    }
+}
@@ -0,0 +1,61 @@
+package com.aws.spring.ebook.controller.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingTest {
+
+    @Test
+    void rendersEntriesInRecordingOrderFollowedByTotal() {
+        ServerTiming serverTiming = new ServerTiming();
+        serverTiming.record("ebook.service", Duration.ofMillis(12).plusNanos(340_000).toNanos());
+        serverTiming.record("dynamodb.GetItem", Duration.ofMillis(3).toNanos());
+
+        assertThat(serverTiming.toHeaderValue())
+                .matches("ebook\\.service;dur=12\\.3, dynamodb\\.GetItem;dur=3\\.0, total;dur=\\d+\\.\\d");
+    }
+
+    @Test
+    void sumsRepeatedCallsAndReportsTheirCount() {
+        ServerTiming serverTiming = new ServerTiming();
+        serverTiming.record("s3.GetObject", Duration.ofMillis(2).toNanos());
+        serverTiming.record("s3.GetObject", Duration.ofMillis(3).toNanos());
+        serverTiming.record("s3.GetObject", Duration.ofMillis(5).toNanos());
+
+        assertThat(serverTiming.toHeaderValue()).startsWith("s3.GetObject;dur=10.0;desc=\"3 calls\", total;dur=");
+    }
+
+    @Test
+    void replacesCharactersThatAreNotHttpTokenCharacters() {
+        ServerTiming serverTiming = new ServerTiming();
+        serverTiming.record("EbookServiceImpl#getEbook", 0);
+        serverTiming.record("get /ebooks/{id}", 0);
+        serverTiming.record("a;b,\"c\"", 0);
+
+        assertThat(serverTiming.toHeaderValue())
+                .startsWith("EbookServiceImpl#getEbook;dur=0.0, get__ebooks__id_;dur=0.0, a_b__c_;dur=0.0, total;dur=");
+    }
+
+    @Test
+    void dropsNewNamesOnceTheEntryLimitIsReached() {
+        ServerTiming serverTiming = new ServerTiming();
+        for (int i = 0; i < 30; i++) {
+            serverTiming.record("call" + i, 0);
+        }
+        // Names already present keep accumulating
+        serverTiming.record("call0", 0);
+
+        String header = serverTiming.toHeaderValue();
+        assertThat(header.split(", ")).hasSize(25);
+        assertThat(header).startsWith("call0;dur=0.0;desc=\"2 calls\", ").contains("call23;").doesNotContain("call24;");
+        assertThat(header).containsPattern(", total;dur=\\d+\\.\\d$");
+    }
+
+    @Test
+    void rendersOnlyTotalWithoutEntries() {
+        assertThat(new ServerTiming().toHeaderValue()).matches("total;dur=\\d+\\.\\d");
+    }
+}
@@ -0,0 +1,221 @@
+package com.aws.spring.ebook.respository.impl;
+
+import com.aws.spring.ebook.dto.EbookPage;
+import com.aws.spring.ebook.dto.EbookUpdate;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.exception.EBookNotFoundException;
+import com.aws.spring.ebook.exception.VersionConflictException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EbookRepositoryImplTest {
+
+    private DynamoDbClient dynamoDbClient;
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+    private EbookRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDbClient = mock(DynamoDbClient.class);
+        dynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
+        repository = new EbookRepositoryImpl(dynamoDbClient, dynamoDbAsyncClient, mock(ExecutorService.class), new ObjectMapper());
+        ReflectionTestUtils.setField(repository, "tableName", "ebooks");
+        ReflectionTestUtils.setField(repository, "maxPageSize", 100);
+        ReflectionTestUtils.setField(repository, "authorIndexName", "author-title-index");
+        ReflectionTestUtils.setField(repository, "genreIndexName", "genre-title-index");
+    }
+
+    @Test
+    void continuationTokenRoundTripsTheLastEvaluatedKey() {
+        Map<String, AttributeValue> lastKey = Map.of("id", s("ebook-2"));
+        when(dynamoDbClient.scan(any(ScanRequest.class)))
+                .thenReturn(ScanResponse.builder().items(List.of(item("ebook-1"), item("ebook-2"))).lastEvaluatedKey(lastKey).build())
+                .thenReturn(ScanResponse.builder().items(List.of(item("ebook-3"))).build());
+
+        EbookPage first = repository.getItems(2, null);
+        EbookPage second = repository.getItems(2, first.getNextToken());
+
+        ArgumentCaptor<ScanRequest> requests = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDbClient, times(2)).scan(requests.capture());
+        assertThat(first.getItems()).extracting("ebookId").containsExactly("ebook-1", "ebook-2");
+        assertThat(first.getNextToken()).isNotBlank().doesNotContain("=", "+", "/");
+        assertThat(requests.getAllValues().get(0).hasExclusiveStartKey()).isFalse();
+        assertThat(requests.getAllValues().get(1).exclusiveStartKey()).isEqualTo(lastKey);
+        // The last page carries no token
+        assertThat(second.getItems()).extracting("ebookId").containsExactly("ebook-3");
+        assertThat(second.getNextToken()).isNull();
+    }
+
+    @Test
+    void indexQueryTokenKeepsEveryKeyAttribute() {
+        Map<String, AttributeValue> lastKey = Map.of("id", s("ebook-1"), "author", s("Jane Doe"), "title", s("Title ebook-1"));
+        when(dynamoDbClient.query(any(QueryRequest.class)))
+                .thenReturn(QueryResponse.builder().items(List.of(item("ebook-1"))).lastEvaluatedKey(lastKey).build());
+
+        String token = repository.getItemsByAuthor("Jane Doe", 1, null, false).getNextToken();
+        repository.getItemsByAuthor("Jane Doe", 1, token, false);
+
+        ArgumentCaptor<QueryRequest> requests = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDbClient, times(2)).query(requests.capture());
+        assertThat(requests.getAllValues().get(1).exclusiveStartKey()).isEqualTo(lastKey);
+        assertThat(requests.getAllValues().get(1).indexName()).isEqualTo("author-title-index");
+    }
+
+    @Test
+    void capsPageSizeAtTheConfiguredMaximum() {
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder().items(List.of()).build());
+
+        repository.getItems(5000, null);
+
+        ArgumentCaptor<ScanRequest> request = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDbClient).scan(request.capture());
+        assertThat(request.getValue().limit()).isEqualTo(100);
+    }
+
+    @Test
+    void rejectsInvalidContinuationToken() {
+        assertThatThrownBy(() -> repository.getItems(10, "not base64!"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("Invalid continuation token");
+        assertThatThrownBy(() -> repository.getItems(10, "bm90IGpzb24"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("Invalid continuation token");
+        verify(dynamoDbClient, never()).scan(any(ScanRequest.class));
+    }
+
+    @Test
+    void rejectsPageSizeBelowOne() {
+        assertThatThrownBy(() -> repository.getItems(0, null)).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void updateIsConditionalOnTheExpectedVersion() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().attributes(item("ebook-1", 4)).build());
+
+        Ebook updated = repository.updateItem("ebook-1", new EbookUpdate("New title", null, null, null, null), 3L);
+
+        ArgumentCaptor<UpdateItemRequest> request = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(request.capture());
+        assertThat(request.getValue().updateExpression())
+                .isEqualTo("SET #title = :title, #version = if_not_exists(#version, :zero) + :one");
+        assertThat(request.getValue().conditionExpression()).isEqualTo("attribute_exists(id) AND #version = :expected");
+        assertThat(request.getValue().expressionAttributeValues().get(":expected").n()).isEqualTo("3");
+        assertThat(request.getValue().expressionAttributeValues()).doesNotContainKeys(":author", ":genre", ":pdfUrl");
+        assertThat(request.getValue().returnValues()).isEqualTo(ReturnValue.ALL_NEW);
+        assertThat(updated.getVersion()).isEqualTo(4L);
+    }
+
+    @Test
+    void expectedVersionZeroMatchesItemsWrittenBeforeVersioning() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().attributes(item("ebook-1", 1)).build());
+
+        repository.updateItem("ebook-1", new EbookUpdate(null, null, "Poetry", null, null), 0L);
+
+        ArgumentCaptor<UpdateItemRequest> request = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(request.capture());
+        assertThat(request.getValue().conditionExpression())
+                .isEqualTo("attribute_exists(id) AND (attribute_not_exists(#version) OR #version = :expected)");
+    }
+
+    @Test
+    void unconditionalUpdateOnlyRequiresTheItemToExist() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().attributes(item("ebook-1", 2)).build());
+
+        repository.updateItem("ebook-1", new EbookUpdate(null, null, null, "https://bucket/new.pdf", null), null);
+
+        ArgumentCaptor<UpdateItemRequest> request = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(request.capture());
+        assertThat(request.getValue().conditionExpression()).isEqualTo("attribute_exists(id)");
+        assertThat(request.getValue().expressionAttributeValues()).doesNotContainKey(":expected");
+        // A replacement file without a hash drops the hash of the old one
+        assertThat(request.getValue().updateExpression()).endsWith(" REMOVE #contentHash");
+    }
+
+    @Test
+    void staleVersionIsReportedAsConflictWithTheCurrentVersion() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("failed").build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+                .thenReturn(GetItemResponse.builder().item(item("ebook-1", 5)).build());
+
+        assertThatThrownBy(() -> repository.updateItem("ebook-1", new EbookUpdate("New title", null, null, null, null), 3L))
+                .isInstanceOfSatisfying(VersionConflictException.class, e -> {
+                    assertThat(e.getExpectedVersion()).isEqualTo(3L);
+                    assertThat(e.getCurrentVersion()).isEqualTo(5L);
+                });
+    }
+
+    @Test
+    void failedConditionOnMissingItemIsReportedAsNotFound() {
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("failed").build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+
+        assertThatThrownBy(() -> repository.updateItem("missing", new EbookUpdate("New title", null, null, null, null), 1L))
+                .isInstanceOf(EBookNotFoundException.class);
+    }
+
+    @Test
+    void asyncUpdateMapsFailedConditionToConflict() {
+        when(dynamoDbAsyncClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().message("failed").build()));
+        when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(GetItemResponse.builder().item(item("ebook-1", 5)).build()));
+
+        CompletableFuture<Ebook> update = repository.updateItemAsync("ebook-1", new EbookUpdate("New title", null, null, null, null), 3L);
+
+        assertThatThrownBy(update::join).hasCauseInstanceOf(VersionConflictException.class);
+    }
+
+    private Map<String, AttributeValue> item(String id) {
+        return item(id, 1);
+    }
+
+    private Map<String, AttributeValue> item(String id, long version) {
+        return Map.of(
+                "id", s(id),
+                "title", s("Title " + id),
+                "author", s("Jane Doe"),
+                "genre", s("Fiction"),
+                "pdfUrl", s("https://bucket.s3.amazonaws.com/" + id + ".pdf"),
+                "version", AttributeValue.builder().n(Long.toString(version)).build());
+    }
+
+    private AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
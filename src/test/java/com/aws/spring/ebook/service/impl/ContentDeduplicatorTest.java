@@ -0,0 +1,194 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.entity.ContentBlob;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.respository.ContentBlobRepository;
+import com.aws.spring.ebook.service.S3FileService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContentDeduplicatorTest {
+
+    private static final String BUCKET = "ebooks";
+    private static final byte[] CONTENT = "%PDF-1.7 the same book".getBytes(StandardCharsets.US_ASCII);
+    private static final String HASH = sha256(CONTENT);
+
+    private S3FileService s3FileService;
+    private ContentBlobRepository contentBlobRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private ContentDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3FileService = mock(S3FileService.class);
+        contentBlobRepository = mock(ContentBlobRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicator = new ContentDeduplicator(s3FileService, contentBlobRepository, meterRegistry);
+        ReflectionTestUtils.setField(deduplicator, "bucketName", BUCKET);
+
+        // Reads the stream like the real upload does, so the deduplicator's digest sees every byte
+        when(s3FileService.uploadStreamToS3(eq(BUCKET), any(InputStream.class), anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    long length = invocation.getArgument(1, InputStream.class).transferTo(OutputStream.nullOutputStream());
+                    String key = invocation.getArgument(4, String.class) + "/" + invocation.getArgument(2, String.class);
+                    return new S3ObjectDetails(invocation.getArgument(2), "https://" + BUCKET + "/" + key, key,
+                            invocation.getArgument(3), length, null, "\"etag\"", null);
+                });
+    }
+
+    @Test
+    void registersFirstUploadWithOneReference() throws IOException {
+        when(contentBlobRepository.acquire(HASH)).thenReturn(null);
+        when(contentBlobRepository.register(any(ContentBlob.class))).thenReturn(true);
+
+        S3ObjectDetails stored = deduplicator.store("uploads/1", content(), "book.pdf", "application/pdf", null);
+
+        ArgumentCaptor<ContentBlob> blob = ArgumentCaptor.forClass(ContentBlob.class);
+        verify(contentBlobRepository).register(blob.capture());
+        assertThat(blob.getValue().getHash()).isEqualTo(HASH);
+        assertThat(blob.getValue().getKey()).isEqualTo("uploads/1/book.pdf");
+        assertThat(blob.getValue().getReferenceCount()).isEqualTo(1);
+        assertThat(stored.getSha256()).isEqualTo(HASH);
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void reusesExistingBlobAndDropsDuplicateUpload() throws IOException {
+        when(contentBlobRepository.acquire(HASH)).thenReturn(existingBlob());
+
+        S3ObjectDetails stored = deduplicator.store("uploads/2", content(), "copy.pdf", "application/pdf", null);
+
+        assertThat(stored.getKey()).isEqualTo("blobs/original.pdf");
+        assertThat(stored.getSha256()).isEqualTo(HASH);
+        verify(s3FileService).deleteFileFromS3(BUCKET, "uploads/2/copy.pdf");
+        verify(contentBlobRepository, never()).register(any(ContentBlob.class));
+        assertThat(meterRegistry.counter("ebook.content.deduplicated").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("ebook.content.bytes-saved").count()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    void knownHashSkipsTheUploadEntirely() throws IOException {
+        when(contentBlobRepository.acquire(HASH)).thenReturn(existingBlob());
+
+        S3ObjectDetails stored = deduplicator.store("uploads/3", content(), "copy.pdf", "application/pdf", HASH.toUpperCase());
+
+        assertThat(stored.getKey()).isEqualTo("blobs/original.pdf");
+        verify(s3FileService, never()).uploadStreamToS3(anyString(), any(InputStream.class), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void wrongClaimedHashGivesTheReferenceBack() {
+        String claimed = sha256("other bytes".getBytes(StandardCharsets.US_ASCII));
+        when(contentBlobRepository.acquire(claimed)).thenReturn(existingBlob());
+        when(contentBlobRepository.release(claimed)).thenReturn(1L);
+
+        assertThatThrownBy(() -> deduplicator.store("uploads/4", content(), "copy.pdf", "application/pdf", claimed))
+                .isInstanceOf(BadRequestException.class);
+        verify(contentBlobRepository).release(claimed);
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void losingTheRegistrationRaceReusesTheWinner() throws IOException {
+        when(contentBlobRepository.acquire(HASH)).thenReturn(null, existingBlob());
+        when(contentBlobRepository.register(any(ContentBlob.class))).thenReturn(false);
+
+        S3ObjectDetails stored = deduplicator.store("uploads/5", content(), "book.pdf", "application/pdf", null);
+
+        assertThat(stored.getKey()).isEqualTo("blobs/original.pdf");
+        verify(s3FileService).deleteFileFromS3(BUCKET, "uploads/5/book.pdf");
+    }
+
+    @Test
+    void releaseKeepsObjectWhileReferencesRemain() {
+        when(contentBlobRepository.release(HASH)).thenReturn(2L);
+
+        deduplicator.release(HASH, "blobs/original.pdf");
+
+        verify(contentBlobRepository, never()).deleteIfUnreferenced(anyString());
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void releaseDeletesObjectWithTheLastReference() {
+        when(contentBlobRepository.release(HASH)).thenReturn(0L);
+        when(contentBlobRepository.deleteIfUnreferenced(HASH)).thenReturn(true);
+
+        deduplicator.release(HASH, "blobs/original.pdf");
+
+        verify(s3FileService).deleteFileFromS3(BUCKET, "blobs/original.pdf");
+    }
+
+    @Test
+    void releaseKeepsObjectReferencedAgainBeforeTheDelete() {
+        when(contentBlobRepository.release(HASH)).thenReturn(0L);
+        when(contentBlobRepository.deleteIfUnreferenced(HASH)).thenReturn(false);
+
+        deduplicator.release(HASH, "blobs/original.pdf");
+
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void releaseOfFullyReleasedBlobIsIgnored() {
+        when(contentBlobRepository.release(HASH)).thenThrow(ConditionalCheckFailedException.builder().message("gone").build());
+
+        deduplicator.release(HASH, "blobs/original.pdf");
+
+        verify(contentBlobRepository, never()).deleteIfUnreferenced(anyString());
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void releaseAsyncDeletesObjectWithTheLastReference() {
+        when(contentBlobRepository.releaseAsync(HASH)).thenReturn(CompletableFuture.completedFuture(0L));
+        when(contentBlobRepository.deleteIfUnreferencedAsync(HASH)).thenReturn(CompletableFuture.completedFuture(true));
+        when(s3FileService.deleteFileFromS3Async(BUCKET, "blobs/original.pdf")).thenReturn(CompletableFuture.completedFuture(null));
+
+        deduplicator.releaseAsync(HASH, "blobs/original.pdf").join();
+
+        verify(s3FileService).deleteFileFromS3Async(BUCKET, "blobs/original.pdf");
+    }
+
+    private InputStream content() {
+        return new ByteArrayInputStream(CONTENT);
+    }
+
+    private ContentBlob existingBlob() {
+        return new ContentBlob(HASH, "blobs/original.pdf", "https://" + BUCKET + "/blobs/original.pdf", CONTENT.length,
+                "\"etag\"", 2, System.currentTimeMillis());
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.aws.spring.ebook.service.impl;
+
+import com.aws.spring.ebook.dto.S3ObjectDetails;
+import com.aws.spring.ebook.entity.Ebook;
+import com.aws.spring.ebook.entity.UploadSession;
+import com.aws.spring.ebook.exception.BadRequestException;
+import com.aws.spring.ebook.exception.EbookAlreadyExistsException;
+import com.aws.spring.ebook.respository.UploadSessionRepository;
+import com.aws.spring.ebook.service.EbookService;
+import com.aws.spring.ebook.service.S3FileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResumableUploadServiceImplTest {
+
+    private static final String BUCKET = "ebooks";
+    private static final String SESSION_ID = "session-1";
+    private static final String KEY = SESSION_ID + "_book.pdf";
+    private static final String URL = "https://" + BUCKET + ".s3.amazonaws.com/" + KEY;
+
+    private UploadSessionRepository uploadSessionRepository;
+    private S3FileService s3FileService;
+    private EbookService ebookService;
+    private ResumableUploadServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        uploadSessionRepository = mock(UploadSessionRepository.class);
+        s3FileService = mock(S3FileService.class);
+        ebookService = mock(EbookService.class);
+        service = new ResumableUploadServiceImpl(uploadSessionRepository, s3FileService, ebookService);
+        ReflectionTestUtils.setField(service, "bucketName", BUCKET);
+
+        Map<Integer, String> parts = new HashMap<>(Map.of(1, "\"e1\"", 2, "\"e2\""));
+        when(uploadSessionRepository.getSession(SESSION_ID)).thenReturn(new UploadSession(SESSION_ID, KEY, "upload-1",
+                "book.pdf", "application/pdf", "Title", "Author", "Fiction", 5L * 1024 * 1024, parts, 2, 0L, 0L));
+        when(s3FileService.getObjectDetails(BUCKET, KEY)).thenReturn(
+                new S3ObjectDetails("book.pdf", URL, KEY, "application/pdf", 7L * 1024 * 1024, "2025-01-01T00:00:00Z", "\"etag\"", null));
+    }
+
+    @Test
+    void completesUploadAndRemovesSession() {
+        Ebook created = ebook();
+        when(ebookService.createEbook(eq(SESSION_ID), any(S3ObjectDetails.class), eq("Title"), eq("Author"), eq("Fiction")))
+                .thenReturn(created);
+
+        assertThat(service.completeSession(SESSION_ID)).isSameAs(created);
+        verify(s3FileService).completeMultipartUpload(eq(BUCKET), eq(KEY), eq("upload-1"), anyList());
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+    }
+
+    @Test
+    void retryAfterTransientMetadataFailureFindsTheCompletedObject() {
+        Ebook created = ebook();
+        when(ebookService.createEbook(eq(SESSION_ID), any(S3ObjectDetails.class), anyString(), anyString(), anyString()))
+                .thenThrow(DynamoDbException.builder().statusCode(503).message("unavailable").build())
+                .thenReturn(created);
+
+        assertThatThrownBy(() -> service.completeSession(SESSION_ID)).isInstanceOf(DynamoDbException.class);
+        verify(uploadSessionRepository, never()).deleteSession(anyString());
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+
+        // S3 already completed the upload on the first attempt
+        doThrow(NoSuchUploadException.builder().statusCode(404).build())
+                .when(s3FileService).completeMultipartUpload(eq(BUCKET), eq(KEY), eq("upload-1"), anyList());
+
+        assertThat(service.completeSession(SESSION_ID)).isSameAs(created);
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void retryAfterSessionCleanupFailureReturnsTheEbookAlreadyCreated() {
+        Ebook existing = ebook();
+        doThrow(NoSuchUploadException.builder().statusCode(404).build())
+                .when(s3FileService).completeMultipartUpload(eq(BUCKET), eq(KEY), eq("upload-1"), anyList());
+        when(ebookService.createEbook(eq(SESSION_ID), any(S3ObjectDetails.class), anyString(), anyString(), anyString()))
+                .thenThrow(new EbookAlreadyExistsException(SESSION_ID));
+        when(ebookService.getEbook(SESSION_ID)).thenReturn(existing);
+
+        assertThat(service.completeSession(SESSION_ID)).isSameAs(existing);
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+        verify(s3FileService, never()).deleteFileFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void permanentMetadataFailureDeletesTheCompletedObject() {
+        when(ebookService.createEbook(eq(SESSION_ID), any(S3ObjectDetails.class), anyString(), anyString(), anyString()))
+                .thenThrow(DynamoDbException.builder().statusCode(400).message("ValidationException").build());
+
+        assertThatThrownBy(() -> service.completeSession(SESSION_ID)).isInstanceOf(DynamoDbException.class);
+        verify(s3FileService).deleteFileFromS3(BUCKET, KEY);
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+    }
+
+    @Test
+    void conflictWithAnotherEbookDeletesTheCompletedObject() {
+        when(ebookService.createEbook(eq(SESSION_ID), any(S3ObjectDetails.class), anyString(), anyString(), anyString()))
+                .thenThrow(new EbookAlreadyExistsException(SESSION_ID));
+        when(ebookService.getEbook(SESSION_ID)).thenReturn(
+                new Ebook(SESSION_ID, "Other", "Author", "Fiction", "https://" + BUCKET + ".s3.amazonaws.com/other.pdf"));
+
+        assertThatThrownBy(() -> service.completeSession(SESSION_ID)).isInstanceOf(EbookAlreadyExistsException.class);
+        verify(s3FileService).deleteFileFromS3(BUCKET, KEY);
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+    }
+
+    @Test
+    void abortedUploadEndsTheSession() {
+        doThrow(NoSuchUploadException.builder().statusCode(404).build())
+                .when(s3FileService).completeMultipartUpload(eq(BUCKET), eq(KEY), eq("upload-1"), anyList());
+        when(s3FileService.getObjectDetails(BUCKET, KEY)).thenThrow(S3Exception.builder().statusCode(404).build());
+
+        assertThatThrownBy(() -> service.completeSession(SESSION_ID)).isInstanceOf(BadRequestException.class);
+        verify(uploadSessionRepository).deleteSession(SESSION_ID);
+        verify(ebookService, never()).createEbook(anyString(), any(S3ObjectDetails.class), anyString(), anyString(), anyString());
+    }
+
+    private Ebook ebook() {
+        return new Ebook(SESSION_ID, "Title", "Author", "Fiction", URL);
+    }
+}